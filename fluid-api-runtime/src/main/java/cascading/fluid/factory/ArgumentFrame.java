@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import java.util.List;
+
+/**
+ * Class ArgumentFrame is an immutable view over a shared, append-only buffer of constructor types or arguments.
+ * <p/>
+ * Chained {@link Factory} instances hand their frame forward instead of copying it. Appending to a frame
+ * whose end is also the end of the buffer writes in place, otherwise the view is forked into a new buffer
+ * so values seen by other frames are never overwritten.
+ */
+final class ArgumentFrame<T>
+  {
+  private static final class Buffer
+    {
+    private Object[] values;
+    private int size;
+
+    private Buffer( int capacity )
+      {
+      values = new Object[ Math.max( capacity, 4 ) ];
+      }
+    }
+
+  private final Buffer buffer;
+  private final int begin;
+  private final int end;
+
+  static <T> ArgumentFrame<T> empty()
+    {
+    return new ArgumentFrame<T>( null, 0, 0 );
+    }
+
+  private ArgumentFrame( Buffer buffer, int begin, int end )
+    {
+    this.buffer = buffer;
+    this.begin = begin;
+    this.end = end;
+    }
+
+  int size()
+    {
+    return end - begin;
+    }
+
+  ArgumentFrame<T> append( T[] values, int beginIndex, int endIndex )
+    {
+    return append( values, null, beginIndex, endIndex - beginIndex + 1 );
+    }
+
+  ArgumentFrame<T> append( T[] values )
+    {
+    return append( values, null, 0, values.length );
+    }
+
+  ArgumentFrame<T> append( Object[] values, int[] positions )
+    {
+    return append( values, positions, 0, positions.length );
+    }
+
+  ArgumentFrame<T> append( List<? extends T> values )
+    {
+    return append( values.toArray(), null, 0, values.size() );
+    }
+
+  ArgumentFrame<T> append( ArgumentFrame<T> frame )
+    {
+    if( frame.size() == 0 )
+      return this;
+
+    return append( frame.toArray( new Object[ frame.size() ], 0 ), null, 0, frame.size() );
+    }
+
+  private ArgumentFrame<T> append( Object[] values, int[] positions, int offset, int count )
+    {
+    if( count <= 0 )
+      return this;
+
+    if( buffer != null )
+      {
+      synchronized( buffer )
+        {
+        if( buffer.size == end )
+          {
+          ensureCapacity( buffer, end + count );
+          copy( values, positions, offset, count, buffer.values, end );
+          buffer.size += count;
+
+          return new ArgumentFrame<T>( buffer, begin, end + count );
+          }
+        }
+      }
+
+    // fork, another frame has already appended past our end
+    int size = size();
+    Buffer fork = new Buffer( ( size + count ) * 2 );
+
+    toArray( fork.values, 0 );
+    copy( values, positions, offset, count, fork.values, size );
+    fork.size = size + count;
+
+    return new ArgumentFrame<T>( fork, 0, fork.size );
+    }
+
+  /**
+   * Method toArray copies the values of this frame into the given array starting at the given position.
+   *
+   * @return the given array
+   */
+  <A> A[] toArray( A[] target, int position )
+    {
+    if( buffer == null )
+      return target;
+
+    synchronized( buffer )
+      {
+      System.arraycopy( buffer.values, begin, target, position, size() );
+      }
+
+    return target;
+    }
+
+  private static void ensureCapacity( Buffer buffer, int capacity )
+    {
+    if( buffer.values.length >= capacity )
+      return;
+
+    Object[] values = new Object[ Math.max( capacity, buffer.values.length * 2 ) ];
+
+    System.arraycopy( buffer.values, 0, values, 0, buffer.size );
+
+    buffer.values = values;
+    }
+
+  private static void copy( Object[] values, int[] positions, int offset, int count, Object[] target, int position )
+    {
+    if( positions == null )
+      {
+      System.arraycopy( values, offset, target, position, count );
+      return;
+      }
+
+    for( int i = 0; i < count; i++ )
+      target[ position + i ] = values[ positions[ offset + i ] ];
+    }
+  }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+/**
+ * Interface ConcreteHelper is implemented by the helper classes emitted by the fluid generator alongside the
+ * generated API interfaces.
+ * <p/>
+ * A concrete helper for interface {@code pkg.Outer$InnerHelper} is named {@code pkg.impl.Outer_InnerHelperImpl},
+ * see {@link Reflection#getConcreteHelperName(Class)}. When no such class exists, a proxy is used instead.
+ */
+public interface ConcreteHelper
+  {
+  String PACKAGE = "impl";
+  String SUFFIX = "Impl";
+
+  void setDispatcher( HelperDispatcher dispatcher );
+  }
@@ -20,16 +20,177 @@
 
 package cascading.fluid.factory;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import cascading.pipe.Pipe;
 
 /**
- *
+ * Class Context holds the branch tails of an assembly, and the cursor naming the branch currently being built.
+ * <p/>
+ * A concurrent Context keeps its tails in a lock-free map, and hands each new branch its own cursor via
+ * {@link #forBranch(String)} so branches may be built from independent threads. Either way the tails are kept in
+ * the order their branches were added, so an assembly completes with the same tails in the same order.
  */
 public class Context
   {
-  public Map<String, Pipe> branchTails = new LinkedHashMap<String, Pipe>();
+  public Map<String, Pipe> branchTails;
   public String currentBranch;
+  private final boolean concurrent;
+
+  public static Context concurrent()
+    {
+    return new Context( new BranchTails(), true );
+    }
+
+  public Context()
+    {
+    this( new LinkedHashMap<String, Pipe>(), false );
+    }
+
+  private Context( Map<String, Pipe> branchTails, boolean concurrent )
+    {
+    this.branchTails = branchTails;
+    this.concurrent = concurrent;
+    }
+
+  public boolean isConcurrent()
+    {
+    return concurrent;
+    }
+
+  /**
+   * Method forBranch returns the cursor to use when building the given branch.
+   * <p/>
+   * A sequential Context is its own cursor, a concurrent Context returns a new cursor sharing the branch tails.
+   *
+   * @param name the name of the branch being started
+   * @return a Context positioned on the given branch
+   */
+  public Context forBranch( String name )
+    {
+    Context cursor = concurrent ? new Context( branchTails, true ) : this;
+
+    cursor.currentBranch = name;
+
+    return cursor;
+    }
+
+  /**
+   * Class BranchTails is a concurrent map of branch tails iterated in the order the branches were added, like a
+   * {@link LinkedHashMap}. Null branch names are permitted.
+   */
+  private static class BranchTails extends AbstractMap<String, Pipe>
+    {
+    private static final Object NULL_NAME = new Object();
+
+    private final ConcurrentMap<Object, Tail> tails = new ConcurrentHashMap<Object, Tail>();
+    private final AtomicLong added = new AtomicLong();
+
+    private static class Tail
+      {
+      final long index;
+      final String name;
+      final Pipe pipe;
+
+      Tail( long index, String name, Pipe pipe )
+        {
+        this.index = index;
+        this.name = name;
+        this.pipe = pipe;
+        }
+      }
+
+    private static Object toKey( Object name )
+      {
+      return name == null ? NULL_NAME : name;
+      }
+
+    @Override
+    public int size()
+      {
+      return tails.size();
+      }
+
+    @Override
+    public boolean containsKey( Object name )
+      {
+      return tails.containsKey( toKey( name ) );
+      }
+
+    @Override
+    public Pipe get( Object name )
+      {
+      Tail tail = tails.get( toKey( name ) );
+
+      return tail == null ? null : tail.pipe;
+      }
+
+    @Override
+    public Pipe put( String name, Pipe pipe )
+      {
+      Object key = toKey( name );
+
+      while( true )
+        {
+        Tail prior = tails.get( key );
+
+        if( prior == null )
+          {
+          if( tails.putIfAbsent( key, new Tail( added.getAndIncrement(), name, pipe ) ) == null )
+            return null;
+          }
+        else if( tails.replace( key, prior, new Tail( prior.index, name, pipe ) ) ) // keeps its position
+          {
+          return prior.pipe;
+          }
+        }
+      }
+
+    @Override
+    public Pipe remove( Object name )
+      {
+      Tail tail = tails.remove( toKey( name ) );
+
+      return tail == null ? null : tail.pipe;
+      }
+
+    @Override
+    public void clear()
+      {
+      tails.clear();
+      }
+
+    /** Returns a snapshot of the tails, in the order their branches were added. */
+    @Override
+    public Set<Entry<String, Pipe>> entrySet()
+      {
+      List<Tail> ordered = new ArrayList<Tail>( tails.values() );
+
+      Collections.sort( ordered, new Comparator<Tail>()
+      {
+      @Override
+      public int compare( Tail lhs, Tail rhs )
+        {
+        return lhs.index < rhs.index ? -1 : lhs.index == rhs.index ? 0 : 1;
+        }
+      } );
+
+      Map<String, Pipe> snapshot = new LinkedHashMap<String, Pipe>();
+
+      for( Tail tail : ordered )
+        snapshot.put( tail.name, tail.pipe );
+
+      return Collections.unmodifiableMap( snapshot ).entrySet();
+      }
+    }
   }
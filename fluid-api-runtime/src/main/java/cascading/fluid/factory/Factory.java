@@ -20,7 +20,6 @@
 
 package cascading.fluid.factory;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -34,9 +33,10 @@ public class Factory
   protected static final Logger LOG = LoggerFactory.getLogger( Factory.class );
 
   Class<?> createsType = null;
-  List<Class> types = new ArrayList<Class>();
-  List<Object> arguments = new ArrayList<Object>();
+  ArgumentFrame<Class> types = ArgumentFrame.empty();
+  ArgumentFrame<Object> arguments = ArgumentFrame.empty();
   String trace = null;
+  Recorder recorder = null;
   boolean createOnNext;
 
   public void addPrior( Factory prior )
@@ -46,8 +46,12 @@ public class Factory
 
     createsType = prior.createsType;
     trace = prior.trace;
-    types.addAll( prior.types );
-    arguments.addAll( prior.arguments );
+
+    if( recorder == null )
+      recorder = prior.recorder;
+
+    types = prior.types.append( types ); // shares the prior frame unless this factory already holds values
+    arguments = prior.arguments.append( arguments );
     }
 
   public void setCreatesType( Class<?> createsType )
@@ -65,6 +69,11 @@ public class Factory
     this.trace = trace;
     }
 
+  public void setRecorder( Recorder recorder )
+    {
+    this.recorder = recorder;
+    }
+
   public boolean isCreateOnNext()
     {
     return createOnNext;
@@ -72,29 +81,51 @@ public class Factory
 
   public void addTypes( List<Class> types )
     {
-    this.types.addAll( types );
+    this.types = this.types.append( types );
     }
 
   public void addArguments( List<Object> arguments )
     {
-    this.arguments.addAll( arguments );
+    this.arguments = this.arguments.append( arguments );
     }
 
   public void addTypes( Class<?>[] parameterTypes, int beginIndex, int endIndex )
     {
-    for( int i = beginIndex; i <= endIndex; i++ )
-      this.types.add( parameterTypes[ i ] );
+    this.types = this.types.append( (Class[]) parameterTypes, beginIndex, endIndex );
     }
 
   public void addArguments( Object[] arguments, int beginIndex, int endIndex )
     {
-    for( int i = beginIndex; i <= endIndex; i++ )
-      this.arguments.add( arguments[ i ] );
+    this.arguments = this.arguments.append( arguments, beginIndex, endIndex );
+    }
+
+  public void addTypes( Class<?>[] types )
+    {
+    this.types = this.types.append( (Class[]) types );
+    }
+
+  public void addArguments( Object[] arguments )
+    {
+    this.arguments = this.arguments.append( arguments );
+    }
+
+  public void addArguments( Object[] arguments, int[] positions )
+    {
+    this.arguments = this.arguments.append( arguments, positions );
     }
 
   public Object create()
     {
-    return instantiate( types, arguments );
+    Class[] typeArray = types.toArray( new Class[ types.size() ], 0 );
+    Object[] argumentArray = arguments.toArray( new Object[ arguments.size() ], 0 );
+
+    return instantiate( typeArray, argumentArray );
+    }
+
+  protected void clearArguments()
+    {
+    types = ArgumentFrame.empty();
+    arguments = ArgumentFrame.empty();
     }
 
   protected void logInfo( String message, Object... values )
@@ -102,15 +133,53 @@ public class Factory
     LOG.debug( message, values );
     }
 
-  protected Object instantiate( List<Class> types, List<Object> args )
+  /**
+   * Method getArguments returns the constructor arguments collected so far, so a generated helper can create
+   * its type directly.
+   */
+  protected Object[] getArguments()
+    {
+    return arguments.toArray( new Object[ arguments.size() ], 0 );
+    }
+
+  /**
+   * Method created completes an instance a generated helper created directly from the given types and
+   * arguments, setting its trace and recording it as {@link #create()} would.
+   */
+  protected <T> T created( T result, Class[] types, Object[] args )
+    {
+    logInfo( "created: {}", createsType.getName() );
+
+    String value = setTraceOn( result );
+
+    if( recorder != null )
+      recorder.record( createsType, types, args, value, result );
+
+    return result;
+    }
+
+  protected Object instantiate( Class[] types, Object[] args )
     {
     logInfo( "creating: {}", createsType.getName() );
 
-    Object result = Reflection.createWith( createsType, types, args );
+    Reflection.ConstructorInvoker invoker = Reflection.getConstructorInvoker( createsType, types );
+    Object result = invoker.newInstance( args );
 
-    if( trace != null && !trace.isEmpty() )
-      Reflection.setTraceOn( result, trace );
+    String value = setTraceOn( result );
+
+    if( recorder != null )
+      recorder.record( invoker, args, value, result );
 
     return result;
     }
+
+  private String setTraceOn( Object result )
+    {
+    if( trace == null || trace.isEmpty() )
+      return null;
+
+    Reflection.setTraceOn( result, trace );
+
+    return trace;
+    }
   }
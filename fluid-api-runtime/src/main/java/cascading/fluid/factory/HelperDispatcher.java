@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+/**
+ * Interface HelperDispatcher is implemented by the builder method handlers so generated concrete helper
+ * classes can hand their calls over without going through a {@link java.lang.reflect.Method}.
+ */
+public interface HelperDispatcher
+  {
+  Object dispatch( Object self, MethodDescriptor descriptor, Object[] args );
+
+  /**
+   * Returns true if calls to the given method must be dispatched, as the dispatcher handles them itself
+   * instead of creating the declared type.
+   */
+  boolean isIntercepted( MethodDescriptor descriptor );
+  }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class MethodDescriptor holds everything needed to dispatch a single helper method, the {@link MethodMeta}
+ * values, the declared parameter types, and for every {@link AtomicReference} parameter the helper type
+ * it should be populated with.
+ * <p/>
+ * Descriptors are either derived from a {@link Method} by a proxy {@link javassist.util.proxy.MethodHandler}, or
+ * are declared as constants by generated concrete helper classes.
+ */
+public final class MethodDescriptor
+  {
+  private final String name;
+  private final Class[] parameterTypes;
+  private final Class[] helperTypes;
+  private final int[] argumentPositions;
+  private final Class[] argumentTypes;
+  private final int[] helperPositions;
+
+  private final boolean hasMeta;
+  private final Class<? extends Factory> factory;
+  private final Class creates;
+  private final String method;
+  private final boolean createOnNext;
+
+  public static MethodDescriptor from( Method method )
+    {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    Type[] genericTypes = method.getGenericParameterTypes();
+    Class[] helperTypes = new Class[ parameterTypes.length ];
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      if( parameterTypes[ i ] == AtomicReference.class )
+        helperTypes[ i ] = getReferencedType( genericTypes[ i ] );
+      }
+
+    MethodMeta annotation = method.getAnnotation( MethodMeta.class );
+
+    if( annotation == null )
+      return new MethodDescriptor( method.getName(), parameterTypes, helperTypes );
+
+    return new MethodDescriptor( method.getName(), parameterTypes, helperTypes, annotation.factory(), annotation.creates(), annotation.method(), annotation.createOnNext() );
+    }
+
+  private static Class getReferencedType( Type type )
+    {
+    if( !( type instanceof ParameterizedType ) )
+      return null;
+
+    Type argument = ( (ParameterizedType) type ).getActualTypeArguments()[ 0 ];
+
+    if( argument instanceof ParameterizedType )
+      argument = ( (ParameterizedType) argument ).getRawType();
+
+    return argument instanceof Class ? (Class) argument : null;
+    }
+
+  public MethodDescriptor( String name, Class[] parameterTypes, Class[] helperTypes )
+    {
+    this( name, parameterTypes, helperTypes, false, null, null, null, false );
+    }
+
+  public MethodDescriptor( String name, Class[] parameterTypes, Class[] helperTypes, Class<? extends Factory> factory, Class creates, String method, boolean createOnNext )
+    {
+    this( name, parameterTypes, helperTypes, true, factory, creates, method, createOnNext );
+    }
+
+  private MethodDescriptor( String name, Class[] parameterTypes, Class[] helperTypes, boolean hasMeta, Class<? extends Factory> factory, Class creates, String method, boolean createOnNext )
+    {
+    this.name = name;
+    this.parameterTypes = parameterTypes;
+    this.helperTypes = helperTypes;
+    this.hasMeta = hasMeta;
+    this.factory = factory;
+    this.creates = creates;
+    this.method = method;
+    this.createOnNext = createOnNext;
+
+    int helpers = 0;
+
+    for( Class parameterType : parameterTypes )
+      {
+      if( parameterType == AtomicReference.class )
+        helpers++;
+      }
+
+    this.argumentPositions = new int[ parameterTypes.length - helpers ];
+    this.argumentTypes = new Class[ parameterTypes.length - helpers ];
+    this.helperPositions = new int[ helpers ];
+
+    for( int i = 0, arg = 0, helper = 0; i < parameterTypes.length; i++ )
+      {
+      if( parameterTypes[ i ] == AtomicReference.class )
+        {
+        helperPositions[ helper++ ] = i;
+        }
+      else
+        {
+        argumentPositions[ arg ] = i;
+        argumentTypes[ arg++ ] = parameterTypes[ i ];
+        }
+      }
+    }
+
+  public String getName()
+    {
+    return name;
+    }
+
+  public int getParameterCount()
+    {
+    return parameterTypes.length;
+    }
+
+  public Class getParameterType( int pos )
+    {
+    return parameterTypes[ pos ];
+    }
+
+  /**
+   * Returns the helper type the {@link AtomicReference} parameter at the given position should hold,
+   * or null if the parameter is a plain argument.
+   */
+  public Class getHelperType( int pos )
+    {
+    return helperTypes[ pos ];
+    }
+
+  public boolean isHelper( int pos )
+    {
+    return parameterTypes[ pos ] == AtomicReference.class;
+    }
+
+  /** Returns the positions of the plain, non helper, arguments. The array must not be modified. */
+  public int[] getArgumentPositions()
+    {
+    return argumentPositions;
+    }
+
+  /** Returns the declared types of the plain, non helper, arguments. The array must not be modified. */
+  public Class[] getArgumentTypes()
+    {
+    return argumentTypes;
+    }
+
+  /** Returns the positions of the {@link AtomicReference} helper parameters. The array must not be modified. */
+  public int[] getHelperPositions()
+    {
+    return helperPositions;
+    }
+
+  public boolean hasMeta()
+    {
+    return hasMeta;
+    }
+
+  public Class<? extends Factory> getFactory()
+    {
+    return factory;
+    }
+
+  public Class getCreates()
+    {
+    return creates;
+    }
+
+  public String getMethod()
+    {
+    return method;
+    }
+
+  public boolean isCreateOnNext()
+    {
+    return createOnNext;
+    }
+
+  @Override
+  public String toString()
+    {
+    final StringBuilder sb = new StringBuilder( "MethodDescriptor{" );
+    sb.append( "name='" ).append( name ).append( '\'' );
+    sb.append( ", parameters=" ).append( parameterTypes.length );
+    sb.append( ", hasMeta=" ).append( hasMeta );
+    sb.append( '}' );
+    return sb.toString();
+    }
+  }
@@ -20,7 +20,6 @@
 
 package cascading.fluid.factory;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import cascading.pipe.Pipe;
@@ -44,7 +43,7 @@ public class PipeFactory extends Factory
 
   public PipeFactory( List<Object> arguments )
     {
-    this.arguments.addAll( arguments );
+    addArguments( arguments );
     }
 
   @Override
@@ -73,18 +72,23 @@ public class PipeFactory extends Factory
 
     Pipe pipe = context.branchTails.get( context.currentBranch );
 
-    LinkedList<Class> newTypes = new LinkedList<Class>( types );
-    LinkedList<Object> newArgs = new LinkedList<Object>( arguments );
+    int size = types.size();
+    Class[] newTypes = new Class[ size + 1 ];
+    Object[] newArgs = new Object[ arguments.size() + 1 ];
 
     if( pipe != null )
       {
-      newTypes.addFirst( pipe.getClass() );
-      newArgs.addFirst( pipe );
+      newTypes[ 0 ] = pipe.getClass();
+      newArgs[ 0 ] = pipe;
+      types.toArray( newTypes, 1 );
+      arguments.toArray( newArgs, 1 );
       }
     else
       {
-      newTypes.add( String.class );
-      newArgs.add( context.currentBranch );
+      types.toArray( newTypes, 0 );
+      arguments.toArray( newArgs, 0 );
+      newTypes[ size ] = String.class;
+      newArgs[ newArgs.length - 1 ] = context.currentBranch;
       }
 
     result = (Pipe) instantiate( newTypes, newArgs );
@@ -92,8 +96,7 @@ public class PipeFactory extends Factory
     createsType = null;
     context.currentBranch = result.getName();
     context.branchTails.put( context.currentBranch, result );
-    types.clear();
-    arguments.clear();
+    clearArguments();
 
     return result;
     }
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.fluid.FluidException;
+
+/**
+ * Class Recorder records every instance created by a builder, along with the resolved constructor and arguments
+ * used to create it, so the builder chain may later be replayed via a {@link Template}.
+ * <p/>
+ * Arguments that are themselves recorded instances, or arrays holding recorded instances, are kept as references
+ * to the recording step that created them. All other arguments are kept as constants that may be substituted
+ * during replay.
+ */
+public class Recorder
+  {
+  private final List<Template.Step> steps = new ArrayList<Template.Step>();
+  private final List<Object> instances = new ArrayList<Object>();
+  private final Map<Object, Integer> results = new IdentityHashMap<Object, Integer>();
+
+  /**
+   * Method record records the given result as created by the constructor of the given type accepting the given types.
+   *
+   * @param type      the type created
+   * @param types     the constructor parameter types
+   * @param arguments the constructor arguments
+   * @param result    the created instance
+   */
+  public void record( Class<?> type, Class[] types, Object[] arguments, Object result )
+    {
+    record( type, types, arguments, null, result );
+    }
+
+  /**
+   * Method record records the given result as created by the constructor of the given type accepting the given types.
+   * <p/>
+   * The given trace is set on every instance replayed or rewritten from this step.
+   *
+   * @param type      the type created
+   * @param types     the constructor parameter types
+   * @param arguments the constructor arguments
+   * @param trace     the trace of the created instance, may be null
+   * @param result    the created instance
+   */
+  public void record( Class<?> type, Class[] types, Object[] arguments, String trace, Object result )
+    {
+    record( Reflection.getConstructorInvoker( type, types ), arguments, trace, result );
+    }
+
+  synchronized void record( Reflection.ConstructorInvoker invoker, Object[] arguments, String trace, Object result )
+    {
+    Template.Slot[] slots = new Template.Slot[ arguments.length ];
+
+    for( int i = 0; i < arguments.length; i++ )
+      slots[ i ] = slotFor( arguments[ i ] );
+
+    results.put( result, steps.size() );
+    steps.add( new Template.Step( invoker, slots, trace ) );
+    instances.add( result );
+    }
+
+  private Template.Slot slotFor( Object value )
+    {
+    Integer step = value == null ? null : results.get( value );
+
+    if( step != null )
+      return Template.Slot.result( step );
+
+    if( value instanceof Object[] )
+      {
+      Object[] values = (Object[]) value;
+      Template.Slot[] elements = new Template.Slot[ values.length ];
+      boolean hasResult = false;
+
+      for( int i = 0; i < values.length; i++ )
+        {
+        elements[ i ] = slotFor( values[ i ] );
+        hasResult |= !elements[ i ].isConstant();
+        }
+
+      if( hasResult )
+        return Template.Slot.array( value.getClass().getComponentType(), elements );
+      }
+
+    return Template.Slot.constant( value );
+    }
+
+  /**
+   * Method complete returns an immutable Template that will replay all recorded steps, returning
+   * instances created in place of the given tails.
+   *
+   * @param tails the tails returned by the recorded builder
+   * @return a new Template
+   */
+  public synchronized <T> Template<T> complete( T[] tails )
+    {
+    Template.Slot[] slots = new Template.Slot[ tails.length ];
+
+    for( int i = 0; i < tails.length; i++ )
+      {
+      slots[ i ] = slotFor( tails[ i ] );
+
+      if( slots[ i ].isConstant() )
+        throw new FluidException( "tail was not created by the recorded builder: " + tails[ i ] );
+      }
+
+    Class<T> tailType = (Class<T>) tails.getClass().getComponentType();
+
+    return new Template<T>( steps.toArray( new Template.Step[ steps.size() ] ), slots, tailType );
+    }
+
+  /**
+   * Method isRecorded returns true if the given instance was recorded.
+   *
+   * @param instance the instance to test
+   * @return true if recorded
+   */
+  public synchronized boolean isRecorded( Object instance )
+    {
+    return instance != null && results.containsKey( instance );
+    }
+
+  /**
+   * Method getArguments returns the constructor arguments the given instance was recorded with.
+   *
+   * @param instance the recorded instance
+   * @return a new array of arguments, or null if the given instance was not recorded
+   */
+  public synchronized Object[] getArguments( Object instance )
+    {
+    Integer step = instance == null ? null : results.get( instance );
+
+    if( step == null )
+      return null;
+
+    return steps.get( step ).resolve( instances.toArray(), Collections.emptyMap() );
+    }
+
+  /**
+   * Method recreate returns a new instance created by the recorded constructor of the given instance, replacing any
+   * argument, or argument array element, that is a key in the given replacements with its value.
+   * <p/>
+   * Replacements are matched by identity. The new instance is given the trace of the given instance, and is recorded.
+   *
+   * @param instance     the recorded instance
+   * @param replacements the arguments mapped to the values to replace them with
+   * @return a new instance
+   */
+  public synchronized <T> T recreate( T instance, Map<Object, Object> replacements )
+    {
+    return (T) recreate( instance, null, replacements );
+    }
+
+  /**
+   * Method recreate returns a new instance of the given type, created by the constructor accepting the recorded
+   * parameter types of the given instance, replacing any argument, or argument array element, that is a key in the
+   * given replacements with its value.
+   * <p/>
+   * Replacements are matched by identity. The new instance is given the trace of the given instance, and is recorded.
+   *
+   * @param instance     the recorded instance
+   * @param type         the type to create, or null to create the type of the given instance
+   * @param replacements the arguments mapped to the values to replace them with
+   * @return a new instance
+   */
+  public synchronized <T> T recreate( Object instance, Class<T> type, Map<Object, Object> replacements )
+    {
+    Template.Step step = getStep( instance );
+    Object[] arguments = getArguments( instance );
+
+    for( int i = 0; i < arguments.length; i++ )
+      arguments[ i ] = replace( arguments[ i ], replacements );
+
+    Reflection.ConstructorInvoker invoker = step.getInvoker();
+
+    if( type != null )
+      invoker = Reflection.getConstructorInvoker( type, step.getParameterTypes() );
+
+    return (T) step.create( invoker, instance, arguments, this );
+    }
+
+  /**
+   * Method getParameterTypes returns the parameter types of the constructor the given instance was recorded with.
+   *
+   * @param instance the recorded instance
+   * @return a new array of types
+   */
+  public synchronized Class[] getParameterTypes( Object instance )
+    {
+    return getStep( instance ).getParameterTypes();
+    }
+
+  private Template.Step getStep( Object instance )
+    {
+    Integer step = instance == null ? null : results.get( instance );
+
+    if( step == null )
+      throw new FluidException( "instance was not created by the recorded builder: " + instance );
+
+    return steps.get( step );
+    }
+
+  private static Object replace( Object value, Map<Object, Object> replacements )
+    {
+    if( value == null )
+      return null;
+
+    if( replacements.containsKey( value ) )
+      return replacements.get( value );
+
+    if( !( value instanceof Object[] ) )
+      return value;
+
+    Object[] values = (Object[]) value;
+    Object[] array = null;
+
+    for( int i = 0; i < values.length; i++ )
+      {
+      Object element = replace( values[ i ], replacements );
+
+      if( element == values[ i ] )
+        continue;
+
+      if( array == null )
+        array = values.clone();
+
+      array[ i ] = element;
+      }
+
+    return array == null ? values : array;
+    }
+
+  /**
+   * Method rewrite visits every recorded instance the given tails were created from, in the order it was created,
+   * giving the Rewriter the chance to replace it, and returns the instances created in place of the given tails.
+   * Instances no longer reachable from the tails, like those replaced by an earlier rewrite, are not visited.
+   * <p/>
+   * Tails not created by the recorded builder, like a pipe the assembly was continued from and left as is, are
+   * returned unchanged, as are any unrecorded instances a recorded instance was created from.
+   * <p/>
+   * An instance the Rewriter keeps, but that was created from an instance replaced earlier, is created again by its
+   * recorded constructor from the replaced arguments, with its original trace. Instances that do not depend on any
+   * replaced instance are returned as is.
+   * <p/>
+   * Created instances are recorded, so the result may be rewritten again, or completed as a {@link Template}.
+   *
+   * @param tails    the tails returned by the recorded builder
+   * @param rewriter the Rewriter to apply
+   * @return a new array of tails
+   */
+  public synchronized <T> T[] rewrite( T[] tails, Rewriter rewriter )
+    {
+    int[] tailSteps = new int[ tails.length ];
+
+    for( int i = 0; i < tails.length; i++ )
+      {
+      Integer step = tails[ i ] == null ? null : results.get( tails[ i ] );
+
+      tailSteps[ i ] = step == null ? -1 : step; // not recorded, so returned as is
+      }
+
+    int numSteps = steps.size();
+    Object[] original = instances.toArray();
+    Object[] created = new Object[ numSteps ];
+    Map<Object, Object> rebuilt = new IdentityHashMap<Object, Object>();
+    BitSet reachable = new BitSet( numSteps );
+
+    for( int step : tailSteps )
+      {
+      if( step != -1 )
+        reachable.set( step );
+      }
+
+    // a step only references steps created before it
+    for( int i = reachable.length() - 1; i >= 0; i = reachable.previousSetBit( i - 1 ) )
+      steps.get( i ).markReferences( reachable );
+
+    for( int i = reachable.nextSetBit( 0 ); i >= 0; i = reachable.nextSetBit( i + 1 ) )
+      {
+      created[ i ] = rewriter.rewrite( original[ i ], rebuilt );
+
+      if( created[ i ] == null )
+        created[ i ] = steps.get( i ).rebuild( original[ i ], created, original, this );
+
+      rebuilt.put( original[ i ], created[ i ] );
+      }
+
+    T[] result = Arrays.copyOf( tails, tails.length );
+
+    for( int i = 0; i < tails.length; i++ )
+      {
+      if( tailSteps[ i ] != -1 )
+        result[ i ] = (T) created[ tailSteps[ i ] ];
+      }
+
+    return result;
+    }
+  }
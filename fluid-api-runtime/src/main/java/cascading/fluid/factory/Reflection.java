@@ -20,17 +20,24 @@
 
 package cascading.fluid.factory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import cascading.fluid.FluidException;
 import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.Proxy;
 import javassist.util.proxy.ProxyFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +52,13 @@ public class Reflection
   {
   private static final Logger LOG = LoggerFactory.getLogger( Reflection.class );
 
+  private static final ConstructorInvoker NO_CONCRETE_HELPER = new ConstructorInvoker();
+
+  private static final ConcurrentMap<ProxyKey, Class<?>> proxyClasses = new ConcurrentHashMap<ProxyKey, Class<?>>();
+  private static final ConcurrentMap<Class, HelperMethodFilter> methodFilters = new ConcurrentHashMap<Class, HelperMethodFilter>();
+  private static final ConcurrentMap<ConstructorKey, ConstructorInvoker> constructorInvokers = new ConcurrentHashMap<ConstructorKey, ConstructorInvoker>();
+  private static final ConcurrentMap<ProxyKey, ConstructorInvoker> concreteHelpers = new ConcurrentHashMap<ProxyKey, ConstructorInvoker>();
+
   public static <T> T create( Class<T> interfaceType, MethodHandler methodHandler )
     {
     return create( interfaceType, methodHandler, null );
@@ -60,19 +74,29 @@ public class Reflection
 
   static <T> T create( Class<T> interfaceType, MethodHandler methodHandler, Class superType, Class[] paramTypes, Object[] args )
     {
-    ProxyFactory proxyFactory = new ProxyFactory();
+    if( paramTypes.length == 0 && methodHandler instanceof HelperDispatcher )
+      {
+      ConstructorInvoker concreteHelper = getConcreteHelper( interfaceType, superType );
 
-    if( superType != null )
-      proxyFactory.setSuperclass( superType );
+      if( concreteHelper != null )
+        {
+        T helper = concreteHelper.newInstance( args );
 
-    if( interfaceType != null )
-      proxyFactory.setInterfaces( new Class[]{interfaceType} );
+        ( (ConcreteHelper) helper ).setDispatcher( (HelperDispatcher) methodHandler );
 
-    proxyFactory.setFilter( new HelperMethodFilter( superType ) );
+        return helper;
+        }
+      }
+
+    Class<?> proxyClass = getProxyClass( interfaceType, superType );
 
     try
       {
-      return (T) proxyFactory.create( paramTypes, args, methodHandler );
+      Object proxy = proxyClass.getConstructor( paramTypes ).newInstance( args );
+
+      ( (Proxy) proxy ).setHandler( methodHandler );
+
+      return (T) proxy;
       }
     catch( NoSuchMethodException exception )
       {
@@ -92,48 +116,166 @@ public class Reflection
       }
     }
 
-  public static <T> T createWith( Class<T> type, List<Class> types, List<Object> arguments )
+  /**
+   * Returns the name of the generated concrete helper class for the given helper interface.
+   */
+  public static String getConcreteHelperName( Class interfaceType )
     {
-    Class[] typeArray = types.toArray( new Class[ types.size() ] );
+    String packageName = interfaceType.getPackage() == null ? "" : interfaceType.getPackage().getName();
+    String typeName = interfaceType.getName().substring( packageName.isEmpty() ? 0 : packageName.length() + 1 );
+    String prefix = packageName.isEmpty() ? "" : packageName + ".";
 
-    Set<Constructor> constructors = getConstructors( type, withParametersAssignableTo( typeArray ) );
+    return prefix + ConcreteHelper.PACKAGE + "." + typeName.replace( '$', '_' ) + ConcreteHelper.SUFFIX;
+    }
 
-    if( constructors.size() != 1 )
-      throw new FluidException( "could not find constructor for: " + type + ", with: " + types );
+  /**
+   * Returns an invoker for the no-arg constructor of the generated concrete helper implementing the given interface
+   * and extending the given super type, or null if none was generated, in which case a proxy must be used.
+   */
+  static ConstructorInvoker getConcreteHelper( Class interfaceType, Class superType )
+    {
+    if( interfaceType == null )
+      return null;
 
-    Constructor constructor = constructors.iterator().next();
+    ProxyKey key = new ProxyKey( interfaceType, superType );
+    ConstructorInvoker invoker = concreteHelpers.get( key );
 
-    Object[] argsArray = arguments.toArray( new Object[ arguments.size() ] );
+    if( invoker == null )
+      {
+      invoker = loadConcreteHelper( interfaceType, superType );
 
-    return newInstance( constructor, argsArray );
+      ConstructorInvoker prior = concreteHelpers.putIfAbsent( key, invoker );
+
+      if( prior != null )
+        invoker = prior;
+      }
+
+    return invoker == NO_CONCRETE_HELPER ? null : invoker;
     }
 
-  private static <T> T newInstance( Constructor constructor, Object[] argsArray )
+  private static ConstructorInvoker loadConcreteHelper( Class interfaceType, Class superType )
     {
+    String className = getConcreteHelperName( interfaceType );
+
     try
       {
-      return (T) constructor.newInstance( argsArray );
-      }
-    catch( InstantiationException exception )
-      {
-      throw new FluidException( "unable to create type for: " + constructor, exception );
+      Class<?> type = Class.forName( className, false, interfaceType.getClassLoader() );
+      Class expectedSuperType = superType == null ? Object.class : superType;
+
+      if( type.getSuperclass() != expectedSuperType || !interfaceType.isAssignableFrom( type ) || !ConcreteHelper.class.isAssignableFrom( type ) )
+        {
+        LOG.debug( "concrete helper: {}, does not extend: {}, using proxy", className, expectedSuperType.getName() );
+        return NO_CONCRETE_HELPER;
+        }
+
+      return new ConstructorInvoker( type.getConstructor() );
       }
-    catch( IllegalAccessException exception )
+    catch( ClassNotFoundException exception )
       {
-      throw new FluidException( "unable to create type for: " + constructor, exception );
+      LOG.debug( "no concrete helper found: {}, using proxy", className );
+      return NO_CONCRETE_HELPER;
       }
-    catch( InvocationTargetException exception )
+    catch( NoSuchMethodException exception )
       {
-      throw new FluidException( "unable to create type for: " + constructor, exception.getTargetException() );
+      throw new FluidException( "concrete helper has no default constructor: " + className, exception );
       }
     }
 
+  /**
+   * Returns the proxy class implementing the given interface and extending the given super type, generating
+   * and caching it on first use. The returned class is shared by all helpers of the same shape, only the
+   * MethodHandler differs per instance.
+   */
+  static Class<?> getProxyClass( Class interfaceType, Class superType )
+    {
+    ProxyKey key = new ProxyKey( interfaceType, superType );
+    Class<?> proxyClass = proxyClasses.get( key );
+
+    if( proxyClass != null )
+      return proxyClass;
+
+    ProxyFactory proxyFactory = new ProxyFactory();
+
+    if( superType != null )
+      proxyFactory.setSuperclass( superType );
+
+    if( interfaceType != null )
+      proxyFactory.setInterfaces( new Class[]{interfaceType} );
+
+    proxyFactory.setFilter( getMethodFilter( superType ) );
+
+    proxyClass = proxyFactory.createClass();
+
+    Class<?> prior = proxyClasses.putIfAbsent( key, proxyClass );
+
+    return prior != null ? prior : proxyClass;
+    }
+
+  private static HelperMethodFilter getMethodFilter( Class superType )
+    {
+    Class key = superType == null ? Object.class : superType; // Object declares nothing we track
+
+    HelperMethodFilter filter = methodFilters.get( key );
+
+    if( filter != null )
+      return filter;
+
+    filter = new HelperMethodFilter( superType );
+
+    HelperMethodFilter prior = methodFilters.putIfAbsent( key, filter );
+
+    return prior != null ? prior : filter;
+    }
+
+  public static <T> T createWith( Class<T> type, List<Class> types, List<Object> arguments )
+    {
+    Class[] typeArray = types.toArray( new Class[ types.size() ] );
+    Object[] argsArray = arguments.toArray( new Object[ arguments.size() ] );
+
+    return createWith( type, typeArray, argsArray );
+    }
+
+  public static <T> T createWith( Class<T> type, Class[] types, Object[] arguments )
+    {
+    ConstructorInvoker invoker = getConstructorInvoker( type, types );
+
+    return invoker.newInstance( arguments );
+    }
+
+  /**
+   * Returns the invoker for the single constructor on the given type accepting the given argument types. The
+   * constructor scan is only performed the first time a given type and argument signature is seen.
+   */
+  public static ConstructorInvoker getConstructorInvoker( Class<?> type, Class[] types )
+    {
+    ConstructorKey key = new ConstructorKey( type, types );
+    ConstructorInvoker invoker = constructorInvokers.get( key );
+
+    if( invoker != null )
+      return invoker;
+
+    Set<Constructor> constructors = getConstructors( type, withParametersAssignableTo( types ) );
+
+    if( constructors.size() != 1 )
+      throw new FluidException( "could not find constructor for: " + type + ", with: " + Arrays.toString( types ) );
+
+    invoker = new ConstructorInvoker( constructors.iterator().next() );
+
+    ConstructorInvoker prior = constructorInvokers.putIfAbsent( new ConstructorKey( type, types.clone() ), invoker );
+
+    return prior != null ? prior : invoker;
+    }
+
   public static String captureDebugTrace( Class type, Method thisMethod, String factoryMethod )
+    {
+    return captureDebugTrace( type, thisMethod.getName(), factoryMethod );
+    }
+
+  public static String captureDebugTrace( Class type, String methodName, String factoryMethod )
     {
     StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
     Package packageName = type.getPackage();
     String typeName = type.getName();
-    String methodName = thisMethod.getName();
 
     boolean skip = true;
 
@@ -247,6 +389,131 @@ public class Reflection
       }
     }
 
+  /**
+   * Class ConstructorInvoker calls a single constructor through a {@link MethodHandle} resolved once, and is
+   * cached by {@link #getConstructorInvoker(Class, Class[])} for every type and argument signature seen.
+   */
+  public static class ConstructorInvoker
+    {
+    private static final MethodType SPREAD_TYPE = MethodType.methodType( Object.class, Object[].class );
+
+    private final Constructor constructor;
+    private final MethodHandle handle;
+
+    private ConstructorInvoker()
+      {
+      this.constructor = null;
+      this.handle = null;
+      }
+
+    private ConstructorInvoker( Constructor constructor )
+      {
+      this.constructor = constructor;
+
+      try
+        {
+        this.handle = MethodHandles.publicLookup()
+          .unreflectConstructor( constructor )
+          .asFixedArity() // varargs arrays are always passed as given
+          .asSpreader( Object[].class, constructor.getParameterTypes().length )
+          .asType( SPREAD_TYPE );
+        }
+      catch( IllegalAccessException exception )
+        {
+        throw new FluidException( "unable to access constructor: " + constructor, exception );
+        }
+      }
+
+    public Constructor getConstructor()
+      {
+      return constructor;
+      }
+
+    public <T> T newInstance( Object[] arguments )
+      {
+      try
+        {
+        return (T) (Object) handle.invokeExact( arguments );
+        }
+      catch( Error error )
+        {
+        throw error;
+        }
+      catch( Throwable throwable )
+        {
+        throw new FluidException( "unable to create type for: " + constructor, throwable );
+        }
+      }
+    }
+
+  private static class ConstructorKey
+    {
+    private final Class type;
+    private final Class[] types;
+    private final int hashCode;
+
+    private ConstructorKey( Class type, Class[] types )
+      {
+      this.type = type;
+      this.types = types;
+      this.hashCode = 31 * type.hashCode() + Arrays.hashCode( types );
+      }
+
+    @Override
+    public boolean equals( Object object )
+      {
+      if( this == object )
+        return true;
+
+      if( object == null || getClass() != object.getClass() )
+        return false;
+
+      ConstructorKey that = (ConstructorKey) object;
+
+      return type == that.type && Arrays.equals( types, that.types );
+      }
+
+    @Override
+    public int hashCode()
+      {
+      return hashCode;
+      }
+    }
+
+  private static class ProxyKey
+    {
+    private final Class interfaceType;
+    private final Class superType;
+
+    private ProxyKey( Class interfaceType, Class superType )
+      {
+      this.interfaceType = interfaceType;
+      this.superType = superType;
+      }
+
+    @Override
+    public boolean equals( Object object )
+      {
+      if( this == object )
+        return true;
+
+      if( object == null || getClass() != object.getClass() )
+        return false;
+
+      ProxyKey proxyKey = (ProxyKey) object;
+
+      return interfaceType == proxyKey.interfaceType && superType == proxyKey.superType;
+      }
+
+    @Override
+    public int hashCode()
+      {
+      int result = interfaceType != null ? interfaceType.hashCode() : 0;
+      result = 31 * result + ( superType != null ? superType.hashCode() : 0 );
+      return result;
+      }
+    }
+
   private static class HelperMethodFilter implements MethodFilter
     {
     Set<String> implemented = new HashSet<String>();
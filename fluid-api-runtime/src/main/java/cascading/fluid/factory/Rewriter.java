@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import java.util.Map;
+
+/**
+ * Interface Rewriter is given every instance recorded by a {@link Recorder}, in the order created, so it may replace
+ * the instance with another.
+ *
+ * @see Recorder#rewrite(Object[], Rewriter)
+ */
+public interface Rewriter
+  {
+  /**
+   * Method rewrite returns the instance to use in place of the given instance, or null to keep it.
+   * <p/>
+   * Any new instance returned should itself be recorded, so the assembly may be rewritten again.
+   *
+   * @param instance the recorded instance
+   * @param rebuilt  every instance created before the given instance, mapped to the instance used in its place
+   * @return the replacing instance, or null
+   */
+  Object rewrite( Object instance, Map<Object, Object> rebuilt );
+  }
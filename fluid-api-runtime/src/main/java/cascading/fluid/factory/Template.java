@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import java.lang.reflect.Array;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Class Template is an immutable plan of the constructors called by a recorded builder chain.
+ * <p/>
+ * Calling {@link #replay(java.util.Map)} creates a new, independent graph of instances by calling each recorded
+ * constructor directly, bypassing the builder, its method dispatch and constructor resolution. Any recorded constant
+ * argument equal to a key in the given bindings, for example a branch name, a Fields instance, or an Operation,
+ * is replaced by the bound value.
+ * <p/>
+ * Constant arguments that are not bound are shared by every replayed graph.
+ */
+public class Template<T>
+  {
+  private final Step[] steps;
+  private final Slot[] tails;
+  private final Class<T> tailType;
+
+  Template( Step[] steps, Slot[] tails, Class<T> tailType )
+    {
+    this.steps = steps;
+    this.tails = tails;
+    this.tailType = tailType;
+    }
+
+  public int getNumSteps()
+    {
+    return steps.length;
+    }
+
+  /**
+   * Method replay creates a new graph, returning the tails in the order they were recorded.
+   *
+   * @return a new array of tails
+   */
+  public T[] replay()
+    {
+    return replay( Collections.emptyMap() );
+    }
+
+  /**
+   * Method replay creates a new graph, substituting any constant argument equal to a binding key with the bound value.
+   *
+   * @param bindings the recorded values mapped to the values to replace them with
+   * @return a new array of tails
+   */
+  public T[] replay( Map<?, ?> bindings )
+    {
+    Object[] created = new Object[ steps.length ];
+
+    for( int i = 0; i < steps.length; i++ )
+      created[ i ] = steps[ i ].replay( created, bindings );
+
+    T[] result = (T[]) Array.newInstance( tailType, tails.length );
+
+    for( int i = 0; i < tails.length; i++ )
+      result[ i ] = (T) tails[ i ].resolve( created, bindings );
+
+    return result;
+    }
+
+  static final class Step
+    {
+    private final Reflection.ConstructorInvoker invoker;
+    private final Slot[] slots;
+    private final String trace;
+
+    Step( Reflection.ConstructorInvoker invoker, Slot[] slots, String trace )
+      {
+      this.invoker = invoker;
+      this.slots = slots;
+      this.trace = trace;
+      }
+
+    Object replay( Object[] created, Map<?, ?> bindings )
+      {
+      Object[] arguments = resolve( created, bindings );
+
+      Object result = invoker.newInstance( arguments );
+
+      if( trace != null )
+        Reflection.setTraceOn( result, trace );
+
+      return result;
+      }
+
+    Object[] resolve( Object[] created, Map<?, ?> bindings )
+      {
+      Object[] arguments = new Object[ slots.length ];
+
+      for( int i = 0; i < slots.length; i++ )
+        arguments[ i ] = slots[ i ].resolve( created, bindings );
+
+      return arguments;
+      }
+
+    /** Returns the given instance, or a new instance if any instance it was created from was since replaced. */
+    Object rebuild( Object instance, Object[] created, Object[] original, Recorder recorder )
+      {
+      boolean isChanged = false;
+
+      for( Slot slot : slots )
+        isChanged |= slot.isChanged( created, original );
+
+      if( !isChanged )
+        return instance;
+
+      return create( invoker, instance, resolve( created, Collections.emptyMap() ), recorder );
+      }
+
+    /** Marks every step this step was created from in the given set. */
+    void markReferences( BitSet references )
+      {
+      for( Slot slot : slots )
+        slot.markReferences( references );
+      }
+
+    Reflection.ConstructorInvoker getInvoker()
+      {
+      return invoker;
+      }
+
+    Class[] getParameterTypes()
+      {
+      return invoker.getConstructor().getParameterTypes();
+      }
+
+    /** Returns a new instance created from the given arguments, with the trace of the given instance. */
+    Object create( Reflection.ConstructorInvoker invoker, Object instance, Object[] arguments, Recorder recorder )
+      {
+      String trace = this.trace;
+
+      if( trace == null )
+        trace = Reflection.returnInstanceFieldIfExistsSafe( instance, "trace" );
+
+      Object result = invoker.newInstance( arguments );
+
+      if( trace != null )
+        Reflection.setTraceOn( result, trace );
+
+      recorder.record( invoker, arguments, trace, result );
+
+      return result;
+      }
+    }
+
+  static final class Slot
+    {
+    private final Object value;
+    private final int step;
+    private final Class<?> componentType;
+    private final Slot[] elements;
+
+    static Slot constant( Object value )
+      {
+      return new Slot( value, -1, null, null );
+      }
+
+    static Slot result( int step )
+      {
+      return new Slot( null, step, null, null );
+      }
+
+    static Slot array( Class<?> componentType, Slot[] elements )
+      {
+      return new Slot( null, -1, componentType, elements );
+      }
+
+    private Slot( Object value, int step, Class<?> componentType, Slot[] elements )
+      {
+      this.value = value;
+      this.step = step;
+      this.componentType = componentType;
+      this.elements = elements;
+      }
+
+    boolean isConstant()
+      {
+      return step == -1 && elements == null;
+      }
+
+    void markReferences( BitSet references )
+      {
+      if( step != -1 )
+        references.set( step );
+
+      if( elements != null )
+        {
+        for( Slot element : elements )
+          element.markReferences( references );
+        }
+      }
+
+    boolean isChanged( Object[] created, Object[] original )
+      {
+      if( step != -1 )
+        return created[ step ] != original[ step ];
+
+      if( elements != null )
+        {
+        for( Slot element : elements )
+          {
+          if( element.isChanged( created, original ) )
+            return true;
+          }
+        }
+
+      return false;
+      }
+
+    Object resolve( Object[] created, Map<?, ?> bindings )
+      {
+      if( step != -1 )
+        return created[ step ];
+
+      if( elements != null )
+        {
+        Object[] array = (Object[]) Array.newInstance( componentType, elements.length );
+
+        for( int i = 0; i < elements.length; i++ )
+          array[ i ] = elements[ i ].resolve( created, bindings );
+
+        return array;
+        }
+
+      if( value == null || bindings.isEmpty() )
+        return value;
+
+      if( bindings.containsKey( value ) )
+        return bindings.get( value );
+
+      if( value instanceof Object[] )
+        return bindElements( (Object[]) value, bindings );
+
+      return value;
+      }
+
+    private static Object bindElements( Object[] values, Map<?, ?> bindings )
+      {
+      Object[] array = null;
+
+      for( int i = 0; i < values.length; i++ )
+        {
+        if( values[ i ] == null || !bindings.containsKey( values[ i ] ) )
+          continue;
+
+        if( array == null )
+          array = values.clone();
+
+        array[ i ] = bindings.get( values[ i ] );
+        }
+
+      return array == null ? values : array;
+      }
+    }
+  }
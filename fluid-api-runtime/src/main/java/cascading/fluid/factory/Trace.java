@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.factory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class Trace captures the builder call site recorded against a created Pipe or Operation.
+ * <p/>
+ * How much work is spent capturing a trace is governed by the {@link Mode} set via {@link #setMode(Mode)}, or
+ * by the {@link #TRACE_MODE} system property. {@link Mode#FULL} is the default.
+ */
+public final class Trace
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( Trace.class );
+
+  /** Field TRACE_MODE is the system property used to set the default trace mode, one of off or full. */
+  public static final String TRACE_MODE = "fluid.trace.mode";
+
+  public enum Mode
+    {
+    /** No call site is captured, created instances are not given a trace. */
+    OFF,
+    /** The call site is resolved and formatted when the builder method is called. */
+    FULL
+    }
+
+  private static volatile Mode mode = readMode( System.getProperty( TRACE_MODE ) );
+
+  private Trace()
+    {
+    }
+
+  static Mode readMode( String value )
+    {
+    if( value == null || value.trim().isEmpty() )
+      return Mode.FULL;
+
+    try
+      {
+      return Mode.valueOf( value.trim().toUpperCase() );
+      }
+    catch( IllegalArgumentException exception )
+      {
+      LOG.warn( "unknown trace mode: {}, using: {}", value, Mode.FULL );
+      return Mode.FULL;
+      }
+    }
+
+  public static Mode getMode()
+    {
+    return mode;
+    }
+
+  public static void setMode( Mode mode )
+    {
+    if( mode == null )
+      throw new IllegalArgumentException( "trace mode may not be null" );
+
+    Trace.mode = mode;
+    }
+
+  /**
+   * Method capture records the call site of the given builder method per the current {@link Mode}.
+   *
+   * @return the formatted call site, or null if the mode is {@link Mode#OFF} or the call site could not be found
+   */
+  public static String capture( Class type, String methodName, String factoryMethod )
+    {
+    switch( mode )
+      {
+      case OFF:
+        return null;
+      default:
+        return Reflection.captureDebugTrace( type, methodName, factoryMethod );
+      }
+    }
+  }
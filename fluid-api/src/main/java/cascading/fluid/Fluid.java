@@ -35,7 +35,13 @@ import cascading.fluid.builder.ConcreteAssemblyHelper;
 import cascading.fluid.builder.LocalMethodLogger;
 import cascading.fluid.builder.OperationMethodHandler;
 import cascading.fluid.builder.SubAssemblyMethodHandler;
+import cascading.fluid.builder.TemplateRecorder;
+import cascading.fluid.factory.Context;
+import cascading.fluid.factory.Recorder;
 import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Trace;
+import cascading.fluid.optimizer.AssemblyOptimizer;
+import cascading.fluid.optimizer.OptimizerOptions;
 import cascading.fluid.util.Version;
 import cascading.property.AppProps;
 import cascading.tuple.Fields;
@@ -136,6 +142,30 @@ public class Fluid
     {
     }
 
+  /**
+   * Method setTraceMode sets how much work is spent recording the builder call site on each created
+   * {@link cascading.pipe.Pipe} and {@link cascading.operation.Operation}.
+   * <p/>
+   * {@link Trace.Mode#FULL} is the default, and may also be set via the {@code fluid.trace.mode} system property.
+   * {@link Trace.Mode#OFF} disables tracing entirely.
+   *
+   * @param mode the trace mode to use for all subsequent builder calls
+   */
+  public static void setTraceMode( Trace.Mode mode )
+    {
+    Trace.setMode( mode );
+    }
+
+  /**
+   * Method getTraceMode returns the current trace mode.
+   *
+   * @return the current Trace.Mode
+   */
+  public static Trace.Mode getTraceMode()
+    {
+    return Trace.getMode();
+    }
+
   /**
    * Method fields is a convenience helper factory for creating a new {@link cascading.tuple.Fields} instance.
    * <p/>
@@ -187,6 +217,89 @@ public class Fluid
     return AssemblyGenerator.startAssembly( helper, new LocalMethodLogger() );
     }
 
+  /**
+   * Method assembly returns a new assembly builder whose completed tails are rewritten by the optimizations
+   * enabled in the given {@link OptimizerOptions}.
+   * <p/>
+   * <pre>
+   *  Pipe[] tails = Fluid.assembly( new OptimizerOptions().setFuseEach( true ) )
+   *    .startBranch( "branch" )
+   *      .each( fields( "value" ) ).filter( lhsFilter )
+   *      .each( fields( "other" ) ).filter( rhsFilter )
+   *    .completeBranch()
+   *  .completeAssembly();
+   * </pre>
+   * <p/>
+   * Every builder call is recorded, so pipes downstream of a rewritten pipe can be created again with their
+   * original arguments and trace.
+   *
+   * @param options the optimizations to apply
+   * @return a new Assembly builder instance
+   */
+  public static cascading.fluid.api.assembly.Assembly.AssemblyBuilder.Start assembly( OptimizerOptions options )
+    {
+    AssemblyMethodHandler methodHandler = new AssemblyMethodHandler();
+
+    methodHandler.setRecorder( new Recorder() );
+
+    AssemblyHelper helper = Reflection.create( AssemblyHelper.class, methodHandler, ConcreteAssemblyHelper.class );
+
+    ( (ConcreteAssemblyHelper) helper ).setMethodHandler( methodHandler );
+    ( (ConcreteAssemblyHelper) helper ).setOptimizer( new AssemblyOptimizer( options ) );
+
+    return AssemblyGenerator.startAssembly( helper, new LocalMethodLogger() );
+    }
+
+  /**
+   * Method concurrentAssembly returns a new assembly builder whose branches may be built from independent threads.
+   * <p/>
+   * Each call to {@code startBranch()} or {@code continueBranch()} is given its own branch cursor, and the
+   * assembly tails are kept in a lock-free registry. A branch builder must only be used by the thread that started it.
+   * <p/>
+   * Once all branches are complete, {@link cascading.fluid.api.assembly.Assembly.AssemblyBuilder.Start#completeAssembly()}
+   * returns the tails ordered by branch name, regardless of the order the branches were completed in.
+   *
+   * @return a new Assembly builder instance
+   */
+  public static cascading.fluid.api.assembly.Assembly.AssemblyBuilder.Start concurrentAssembly()
+    {
+    AssemblyMethodHandler methodHandler = new AssemblyMethodHandler();
+    AssemblyHelper helper = Reflection.create( AssemblyHelper.class, methodHandler, ConcreteAssemblyHelper.class );
+
+    ( (ConcreteAssemblyHelper) helper ).setContext( Context.concurrent() );
+    ( (ConcreteAssemblyHelper) helper ).setMethodHandler( methodHandler );
+
+    return AssemblyGenerator.startAssembly( helper, new LocalMethodLogger() );
+    }
+
+  /**
+   * Method template returns a new recorder whose assembly builder calls are captured as a replayable
+   * {@link cascading.fluid.factory.Template}.
+   * <p/>
+   * <pre>
+   *  TemplateRecorder recorder = Fluid.template();
+   *
+   *  recorder.assembly().startBranch( "branch" )
+   *    .each( fields( "value" ) ).function( function ).outgoing( Fields.ALL )
+   *  .completeBranch();
+   *
+   *  Template&lt;Pipe&gt; template = recorder.completeTemplate();
+   *
+   *  Pipe[] tails = template.replay( Collections.singletonMap( "branch", "tenant" ) );
+   * </pre>
+   * <p/>
+   * Replaying creates a fresh set of Pipe instances by calling the recorded constructors directly, substituting
+   * any recorded argument equal to a binding key, for example branch names, Fields or Operation instances.
+   * Operations created via {@link #function()} and similar factories are recorded as constants, and are shared
+   * by every replayed assembly unless bound.
+   *
+   * @return a new TemplateRecorder instance
+   */
+  public static TemplateRecorder template()
+    {
+    return new TemplateRecorder();
+    }
+
   private static OperationBuilder.Start getOperationBuilder()
     {
     OperationHelper operationHelper = Reflection.create( OperationHelper.class, new OperationMethodHandler() );
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid;
+
+import cascading.fluid.api.assembly.Assembly.AssemblyBuilder;
+import cascading.fluid.api.assembly.Assembly.AssemblyGenerator;
+import cascading.fluid.api.assembly.Assembly.AssemblyHelper;
+import cascading.fluid.api.operation.Operation.OperationBuilder;
+import cascading.fluid.api.operation.Operation.OperationGenerator;
+import cascading.fluid.api.operation.Operation.OperationHelper;
+import cascading.fluid.api.subassembly.SubAssembly.SubAssemblyBuilder;
+import cascading.fluid.api.subassembly.SubAssembly.SubAssemblyGenerator;
+import cascading.fluid.api.subassembly.SubAssembly.SubAssemblyHelper;
+import cascading.fluid.builder.AssemblyMethodHandler;
+import cascading.fluid.builder.ConcreteAssemblyHelper;
+import cascading.fluid.builder.LocalMethodLogger;
+import cascading.fluid.builder.OperationMethodHandler;
+import cascading.fluid.builder.SubAssemblyMethodHandler;
+import cascading.fluid.factory.Context;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.util.Version;
+import cascading.property.AppProps;
+
+/**
+ * Class FluidSession is a reusable alternative to the static {@link Fluid} entry points.
+ * <p/>
+ * The method handlers, helper instances and registered helper methods backing each builder are created once per
+ * session, instead of once per call. Each call to {@link #assembly()} only resets the assembly branch context,
+ * making a session suitable for long-running services building many assemblies.
+ * <p/>
+ * A session builds one assembly at a time, calling {@link #assembly()} discards the branches of the prior assembly.
+ * Services building assemblies from many threads should hold a session per thread, for example via a ThreadLocal,
+ * or use a concurrent session. The operation and sub-assembly factory builders retain no state, and may be
+ * used from any thread.
+ */
+public class FluidSession
+  {
+  static
+    {
+    AppProps.addApplicationFramework( null, Version.getName() + ":" + Version.getVersionString() );
+    }
+
+  private final LocalMethodLogger methodLogger = new LocalMethodLogger();
+  private final AssemblyHelper assemblyHelper;
+  private final OperationHelper operationHelper;
+  private final SubAssemblyHelper subAssemblyHelper;
+
+  /** Constructor FluidSession creates a new session building sequential assemblies. */
+  public FluidSession()
+    {
+    this( false );
+    }
+
+  /**
+   * Constructor FluidSession creates a new session.
+   *
+   * @param concurrent if true, assemblies are built as if by {@link Fluid#concurrentAssembly()}
+   */
+  public FluidSession( boolean concurrent )
+    {
+    AssemblyMethodHandler methodHandler = new AssemblyMethodHandler();
+
+    assemblyHelper = Reflection.create( AssemblyHelper.class, methodHandler, ConcreteAssemblyHelper.class );
+
+    ( (ConcreteAssemblyHelper) assemblyHelper ).setContext( concurrent ? Context.concurrent() : new Context() );
+    ( (ConcreteAssemblyHelper) assemblyHelper ).setMethodHandler( methodHandler );
+
+    operationHelper = Reflection.create( OperationHelper.class, new OperationMethodHandler() );
+    subAssemblyHelper = Reflection.create( SubAssemblyHelper.class, new SubAssemblyMethodHandler() );
+    }
+
+  /**
+   * Method assembly returns an assembly builder for a new assembly, discarding the branches of any prior assembly.
+   *
+   * @return an Assembly builder instance
+   * @see Fluid#assembly()
+   */
+  public AssemblyBuilder.Start assembly()
+    {
+    ( (ConcreteAssemblyHelper) assemblyHelper ).resetContext();
+
+    return AssemblyGenerator.startAssembly( assemblyHelper, methodLogger );
+    }
+
+  private OperationBuilder.Start getOperationBuilder()
+    {
+    return OperationGenerator.build( operationHelper, methodLogger );
+    }
+
+  /** @see Fluid#function() */
+  public cascading.fluid.api.operation.Function.FunctionBuilder<Void> function()
+    {
+    return getOperationBuilder().function();
+    }
+
+  /** @see Fluid#filter() */
+  public cascading.fluid.api.operation.Filter.FilterBuilder<Void> filter()
+    {
+    return getOperationBuilder().filter();
+    }
+
+  /** @see Fluid#aggregator() */
+  public cascading.fluid.api.operation.Aggregator.AggregatorBuilder<Void> aggregator()
+    {
+    return getOperationBuilder().aggregator();
+    }
+
+  /** @see Fluid#buffer() */
+  public cascading.fluid.api.operation.Buffer.BufferBuilder<Void> buffer()
+    {
+    return getOperationBuilder().buffer();
+    }
+
+  /** @see Fluid#valueAssertion() */
+  public cascading.fluid.api.operation.ValueAssertion.ValueAssertionBuilder<Void> valueAssertion()
+    {
+    return getOperationBuilder().valueAssertion();
+    }
+
+  /** @see Fluid#groupAssertion() */
+  public cascading.fluid.api.operation.GroupAssertion.GroupAssertionBuilder<Void> groupAssertion()
+    {
+    return getOperationBuilder().groupAssertion();
+    }
+
+  /** @see Fluid#aggregateBy() */
+  public cascading.fluid.api.subassembly.AggregateBy.AggregateByBuilder<Void> aggregateBy()
+    {
+    return getSubAssemblyBuilder().aggregateBy();
+    }
+
+  private SubAssemblyBuilder.Start getSubAssemblyBuilder()
+    {
+    return SubAssemblyGenerator.build( subAssemblyHelper, methodLogger );
+    }
+  }
@@ -20,20 +20,25 @@
 
 package cascading.fluid.builder;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
-import javax.annotation.Nullable;
 
 import cascading.fluid.api.assembly.Assembly.AssemblyHelper;
 import cascading.fluid.api.assembly.Branch.BranchHelper;
 import cascading.fluid.api.assembly.Group.GroupHelper;
 import cascading.fluid.factory.Context;
+import cascading.fluid.factory.Factory;
 import cascading.fluid.factory.PipeFactory;
+import cascading.fluid.factory.Recorder;
 import cascading.fluid.factory.Reflection;
+import cascading.fluid.optimizer.AssemblyOptimizer;
 import cascading.pipe.Checkpoint;
 import cascading.pipe.CoGroup;
 import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
-import com.google.common.base.Function;
 
 /**
  *
@@ -41,6 +46,9 @@ import com.google.common.base.Function;
 public abstract class ConcreteAssemblyHelper implements AssemblyHelper
   {
   private AssemblyMethodHandler methodHandler;
+  private AssemblyOptimizer optimizer;
+  private Map<Pipe, Long> estimates = newEstimates();
+  private Set<Pipe> selectable = newSelectable();
 
   Context context = new Context();
 
@@ -53,6 +61,71 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
     setMethodHandler( methodHandler );
     }
 
+  /**
+   * Method setContext replaces the branch context, must be called before any branch is started.
+   *
+   * @param context the Context to hold the branch tails of this assembly
+   */
+  public void setContext( Context context )
+    {
+    this.context = context;
+    }
+
+  /**
+   * Method resetContext discards the branches of the prior assembly so this helper may build a new assembly.
+   * <p/>
+   * A new Context is used, so branch builders left over from the prior assembly cannot alter the new one.
+   */
+  public void resetContext()
+    {
+    setContext( context.isConcurrent() ? Context.concurrent() : new Context() );
+
+    estimates = newEstimates();
+    selectable = newSelectable();
+    }
+
+  private static Map<Pipe, Long> newEstimates()
+    {
+    return Collections.synchronizedMap( new IdentityHashMap<Pipe, Long>() );
+    }
+
+  private static Set<Pipe> newSelectable()
+    {
+    return Collections.synchronizedSet( Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() ) );
+    }
+
+  /**
+   * Method getEstimates returns the sizes in bytes estimated on the branch tails of this assembly.
+   *
+   * @return the estimated sizes keyed by pipe
+   */
+  public Map<Pipe, Long> getEstimates()
+    {
+    return estimates;
+    }
+
+  /**
+   * Method getSelectable returns the joins of this assembly started via startJoin(), whose type may be selected by the
+   * optimizer.
+   *
+   * @return the joins that may be replaced by another join type
+   */
+  public Set<Pipe> getSelectable()
+    {
+    return selectable;
+    }
+
+  /**
+   * Method setOptimizer sets the optimizer to rewrite the tails returned by {@link #completeAssembly()}, the method
+   * handler must be given a {@link Recorder} before any branch is started.
+   *
+   * @param optimizer the AssemblyOptimizer to use, or null to return the tails as built
+   */
+  public void setOptimizer( AssemblyOptimizer optimizer )
+    {
+    this.optimizer = optimizer;
+    }
+
   public void setMethodHandler( AssemblyMethodHandler methodHandler )
     {
     this.methodHandler = methodHandler;
@@ -63,12 +136,14 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
     // and bypassing the factory allows for arguments to be in a non-standard order (name, pipe) vs (pipe, arg)
     methodHandler.addMethod( "pipe", new PipeFunction() );
     methodHandler.addMethod( "checkpoint", new CheckpointFunction() );
+    methodHandler.addMethod( "estimatedSize", new EstimatedSizeFunction() );
+    methodHandler.addMethod( "createJoin", new CreateJoinFunction() );
     }
 
   @Override
   public void startBranch( String name, AtomicReference<BranchHelper> _helper1 )
     {
-    Pipe head = new Pipe( name );
+    Pipe head = record( new Pipe( name ), new Class[]{String.class}, name );
 
     handleStart( null, head, _helper1, BranchHelper.class );
     }
@@ -83,6 +158,9 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
     for( Pipe pipe : context.branchTails.values() )
       tails[ count++ ] = pipe;
 
+    if( optimizer != null )
+      return optimizer.optimize( methodHandler.getRecorder(), tails, estimates, selectable );
+
     return tails;
     }
 
@@ -144,41 +222,61 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
       context.branchTails.remove( prior.getName() );
 
     if( newName != null )
-      pipe = new Pipe( newName, pipe );
+      pipe = record( new Pipe( newName, pipe ), new Class[]{String.class, Pipe.class}, newName, pipe );
 
     String name = pipe.getName();
     context.branchTails.put( name, pipe );
-    context.currentBranch = name;
 
     T helper = Reflection.create( interfaceType, methodHandler, PipeFactory.class );
 
-    ( (PipeFactory) helper ).setContext( context );
+    ( (PipeFactory) helper ).setContext( context.forBranch( name ) );
 
     _helper1.set( helper );
     }
 
-  private class CompleteBranchFunction implements Function<Object[], Object>
+  /** Records the given pipe against the assembly template, if this assembly is being recorded. */
+  private <P extends Pipe> P record( P pipe, Class[] types, Object... arguments )
+    {
+    Recorder recorder = methodHandler.getRecorder();
+
+    if( recorder != null )
+      recorder.record( pipe.getClass(), types, arguments, pipe );
+
+    return pipe;
+    }
+
+  /** Returns the branch cursor of the calling helper, which is the shared context unless the assembly is concurrent. */
+  private Context getContext( Object self )
+    {
+    if( self instanceof PipeFactory && ( (PipeFactory) self ).getContext() != null )
+      return ( (PipeFactory) self ).getContext();
+
+    return context;
+    }
+
+  private class CompleteBranchFunction implements MethodFunction
     {
-    @Nullable
     @Override
-    public Object apply( @Nullable Object[] input )
+    public Object apply( Object self, Object[] input )
       {
+      Context context = getContext( self );
+
       return context.branchTails.get( context.currentBranch );
       }
     }
 
-  private class PipeFunction implements Function<Object[], Object>
+  private class PipeFunction implements MethodFunction
     {
-    @Nullable
     @Override
-    public Object apply( @Nullable Object[] input )
+    public Object apply( Object self, Object[] input )
       {
+      Context context = getContext( self );
       Pipe pipe = context.branchTails.get( context.currentBranch );
 
       if( input == null || input.length == 0 )
         throw new IllegalArgumentException( "pipe name is required" );
 
-      Pipe result = new Pipe( (String) input[ 0 ], pipe );
+      Pipe result = record( new Pipe( (String) input[ 0 ], pipe ), new Class[]{String.class, Pipe.class}, input[ 0 ], pipe );
 
       context.branchTails.remove( context.currentBranch );
       context.currentBranch = result.getName();
@@ -188,20 +286,20 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
       }
     }
 
-  private class CheckpointFunction implements Function<Object[], Object>
+  private class CheckpointFunction implements MethodFunction
     {
-    @Nullable
     @Override
-    public Object apply( @Nullable Object[] input )
+    public Object apply( Object self, Object[] input )
       {
+      Context context = getContext( self );
       Pipe pipe = context.branchTails.get( context.currentBranch );
 
       Pipe result;
 
       if( input == null || input.length == 0 )
-        result = new Checkpoint( pipe );
+        result = record( new Checkpoint( pipe ), new Class[]{Pipe.class}, pipe );
       else
-        result = new Checkpoint( (String) input[ 0 ], pipe );
+        result = record( new Checkpoint( (String) input[ 0 ], pipe ), new Class[]{String.class, Pipe.class}, input[ 0 ], pipe );
 
       context.branchTails.remove( context.currentBranch );
       context.currentBranch = result.getName();
@@ -210,4 +308,34 @@ public abstract class ConcreteAssemblyHelper implements AssemblyHelper
       return result;
       }
     }
+
+  private class EstimatedSizeFunction implements MethodFunction
+    {
+    @Override
+    public Object apply( Object self, Object[] input )
+      {
+      Context context = getContext( self );
+      Pipe pipe = context.branchTails.get( context.currentBranch );
+
+      if( input == null || input.length == 0 || (Long) input[ 0 ] < 0 )
+        throw new IllegalArgumentException( "estimated size may not be negative" );
+
+      estimates.put( pipe, (Long) input[ 0 ] );
+
+      return pipe;
+      }
+    }
+
+  private class CreateJoinFunction implements MethodFunction
+    {
+    @Override
+    public Object apply( Object self, Object[] input )
+      {
+      Pipe join = (Pipe) ( (Factory) self ).create();
+
+      selectable.add( join );
+
+      return join;
+      }
+    }
   }
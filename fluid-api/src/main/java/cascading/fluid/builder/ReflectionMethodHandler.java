@@ -23,16 +23,19 @@ package cascading.fluid.builder;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import cascading.fluid.factory.Factory;
-import cascading.fluid.factory.MethodMeta;
+import cascading.fluid.factory.HelperDispatcher;
+import cascading.fluid.factory.MethodDescriptor;
 import cascading.fluid.factory.PipeFactory;
+import cascading.fluid.factory.Recorder;
 import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Trace;
 import com.google.common.base.Function;
 import javassist.util.proxy.MethodHandler;
 import org.slf4j.Logger;
@@ -41,17 +44,47 @@ import org.slf4j.LoggerFactory;
 /**
  *
  */
-public class ReflectionMethodHandler implements MethodHandler
+public class ReflectionMethodHandler implements MethodHandler, HelperDispatcher
   {
   private static final Logger LOG = LoggerFactory.getLogger( OperationMethodHandler.class );
 
-  Map<String, Function<Object[], Object>> methods = new HashMap<String, Function<Object[], Object>>();
+  private static final ConcurrentMap<Method, MethodDescriptor> descriptors = new ConcurrentHashMap<Method, MethodDescriptor>();
+
+  Map<String, MethodFunction> methods = new HashMap<String, MethodFunction>();
+  private Recorder recorder;
 
   public ReflectionMethodHandler()
     {
     }
 
-  public void addMethod( String methodName, Function<Object[], Object> function )
+  public Recorder getRecorder()
+    {
+    return recorder;
+    }
+
+  /**
+   * Method setRecorder sets the Recorder to be given every instance created through this handler.
+   *
+   * @param recorder the Recorder to use, or null to disable recording
+   */
+  public void setRecorder( Recorder recorder )
+    {
+    this.recorder = recorder;
+    }
+
+  public void addMethod( String methodName, final Function<Object[], Object> function )
+    {
+    addMethod( methodName, new MethodFunction()
+    {
+    @Override
+    public Object apply( Object self, Object[] arguments )
+      {
+      return function.apply( arguments );
+      }
+    } );
+    }
+
+  public void addMethod( String methodName, MethodFunction function )
     {
     methods.put( methodName, function );
     }
@@ -59,40 +92,65 @@ public class ReflectionMethodHandler implements MethodHandler
   @Override
   public Object invoke( Object self, Method thisMethod, Method proceed, Object[] args ) throws Throwable
     {
-    logMethodInfo( self, thisMethod, args );
+    if( LOG.isDebugEnabled() )
+      logMethodInfo( self, thisMethod, args );
+
+    return dispatch( self, getDescriptor( thisMethod ), args );
+    }
+
+  private static MethodDescriptor getDescriptor( Method method )
+    {
+    MethodDescriptor descriptor = descriptors.get( method );
+
+    if( descriptor != null )
+      return descriptor;
 
-    String methodName = thisMethod.getName();
+    descriptor = MethodDescriptor.from( method );
 
-    if( methods.containsKey( methodName ) )
-      return methods.get( methodName ).apply( args );
+    MethodDescriptor prior = descriptors.putIfAbsent( method, descriptor );
 
-    return handleFactory( self, thisMethod, args );
+    return prior != null ? prior : descriptor;
     }
 
-  private Object handleFactory( Object self, Method thisMethod, Object[] args )
+  @Override
+  public Object dispatch( Object self, MethodDescriptor descriptor, Object[] args )
     {
-    MethodMeta annotation = thisMethod.getAnnotation( MethodMeta.class );
+    MethodFunction function = methods.get( descriptor.getName() );
+
+    if( function != null )
+      return function.apply( self, args );
 
+    return handleFactory( self, descriptor, args );
+    }
+
+  @Override
+  public boolean isIntercepted( MethodDescriptor descriptor )
+    {
+    return methods.containsKey( descriptor.getName() );
+    }
+
+  private Object handleFactory( Object self, MethodDescriptor descriptor, Object[] args )
+    {
     Class<? extends Factory> factoryType = null;
     Class createsType = null;
     String factoryMethod = null;
     boolean createOnNext = false;
     String trace = null;
 
-    if( annotation != null )
+    if( descriptor.hasMeta() )
       {
-      factoryType = annotation.factory();
-      createsType = annotation.creates();
-      factoryMethod = annotation.method();
-      createOnNext = annotation.createOnNext();
-      trace = Reflection.captureDebugTrace( self.getClass(), thisMethod, factoryMethod );
+      factoryType = descriptor.getFactory();
+      createsType = descriptor.getCreates();
+      factoryMethod = descriptor.getMethod();
+      createOnNext = descriptor.isCreateOnNext();
+      trace = Trace.capture( self.getClass(), descriptor.getName(), factoryMethod );
       }
 
     if( self instanceof Factory )
       {
       Factory factory = (Factory) self;
 
-      if( annotation == null && args.length == 0 ) // assumes we are at the end
+      if( !descriptor.hasMeta() && args.length == 0 ) // assumes we are at the end
         return factory.create();
 
       if( factory.isCreateOnNext() )
@@ -101,27 +159,16 @@ public class ReflectionMethodHandler implements MethodHandler
         factoryType = (Class<? extends Factory>) factory.getClass().getSuperclass();
       }
 
-    List<Factory> children = new ArrayList<Factory>();
-    List<Class> types = new ArrayList<Class>();
-    List<Object> arguments = new ArrayList<Object>();
+    boolean hasChildren = false;
 
-    for( int i = 0; i < args.length; i++ )
+    for( int pos : descriptor.getHelperPositions() )
       {
-      Object arg = args[ i ];
-
-      if( !( arg instanceof AtomicReference ) )
-        {
-        types.add( thisMethod.getParameterTypes()[ i ] );
-        arguments.add( arg );
-        continue;
-        }
+      AtomicReference reference = (AtomicReference) args[ pos ];
+      Class helperType = descriptor.getHelperType( pos );
 
-      AtomicReference reference = (AtomicReference) arg;
-      Type parameterizedType = getParameterizedType( thisMethod, i );
+      LOG.debug( "reference = {}, with param = ", reference, helperType );
 
-      LOG.debug( "reference = {}, with param = ", reference, parameterizedType );
-
-      Object resultHelper = createHelperFromMethod( parameterizedType, this, factoryType );
+      Object resultHelper = createHelperFromMethod( helperType, this, factoryType );
 
       if( resultHelper instanceof Factory ) // chain factories
         {
@@ -130,28 +177,26 @@ public class ReflectionMethodHandler implements MethodHandler
         helper.setCreatesType( createsType );
         helper.setTrace( trace );
         helper.setCreateOnNext( createOnNext );
+        helper.setRecorder( recorder );
 
         if( self instanceof Factory )
           helper.addPrior( (Factory) self ); // forward prior arguments
 
-        children.add( helper );
+        helper.addTypes( descriptor.getArgumentTypes() );
+        helper.addArguments( args, descriptor.getArgumentPositions() );
+
+        hasChildren = true;
         }
 
       reference.set( resultHelper );
       }
 
-    for( Factory child : children )
-      {
-      child.addTypes( types );
-      child.addArguments( arguments );
-      }
-
-    if( !children.isEmpty() )
+    if( hasChildren )
       return null;
 
     Factory factory;
 
-    if( annotation != null || !( self instanceof Factory ) )
+    if( descriptor.hasMeta() || !( self instanceof Factory ) )
       {
       if( factoryType == null )
         return null;
@@ -164,30 +209,24 @@ public class ReflectionMethodHandler implements MethodHandler
       factory.setCreatesType( createsType );
       factory.setTrace( trace );
       factory.setCreateOnNext( createOnNext );
+      factory.setRecorder( recorder );
       }
     else
       {
       factory = (Factory) self;
       }
 
-    factory.addTypes( types );
-    factory.addArguments( arguments );
+    factory.addTypes( descriptor.getArgumentTypes() );
+    factory.addArguments( args, descriptor.getArgumentPositions() );
 
     return factory.create();
     }
 
-  private Object createHelperFromMethod( Type resultType, ReflectionMethodHandler methodHandler, Class<? extends Factory> superType )
+  private Object createHelperFromMethod( Class resultType, ReflectionMethodHandler methodHandler, Class<? extends Factory> superType )
     {
     return Reflection.create( (Class<Object>) resultType, methodHandler, superType );
     }
 
-  private Type getParameterizedType( Method thisMethod, int pos )
-    {
-    Type type = thisMethod.getGenericParameterTypes()[ pos ];
-
-    return ( (ParameterizedType) type ).getActualTypeArguments()[ 0 ];
-    }
-
   private void logMethodInfo( Object self, Method thisMethod, Object[] args )
     {
     LOG.debug( "type = {}, method = {}", self.getClass().getName(), thisMethod );
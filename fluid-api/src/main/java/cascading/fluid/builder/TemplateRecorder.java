@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.builder;
+
+import cascading.fluid.api.assembly.Assembly.AssemblyBuilder;
+import cascading.fluid.api.assembly.Assembly.AssemblyGenerator;
+import cascading.fluid.api.assembly.Assembly.AssemblyHelper;
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Template;
+import cascading.pipe.Pipe;
+
+/**
+ * Class TemplateRecorder provides an assembly builder whose calls are recorded into a replayable {@link Template}.
+ *
+ * @see cascading.fluid.Fluid#template()
+ */
+public class TemplateRecorder
+  {
+  private final Recorder recorder = new Recorder();
+  private final AssemblyHelper helper;
+  private final AssemblyBuilder.Start builder;
+
+  public TemplateRecorder()
+    {
+    AssemblyMethodHandler methodHandler = new AssemblyMethodHandler();
+
+    methodHandler.setRecorder( recorder );
+
+    helper = Reflection.create( AssemblyHelper.class, methodHandler, ConcreteAssemblyHelper.class );
+
+    ( (ConcreteAssemblyHelper) helper ).setMethodHandler( methodHandler );
+
+    builder = AssemblyGenerator.startAssembly( helper, new LocalMethodLogger() );
+    }
+
+  /**
+   * Method assembly returns the assembly builder to record.
+   *
+   * @return the Assembly builder instance being recorded
+   */
+  public AssemblyBuilder.Start assembly()
+    {
+    return builder;
+    }
+
+  /**
+   * Method completeTemplate completes the recorded assembly and returns the resulting Template.
+   * <p/>
+   * Each call to {@link Template#replay(java.util.Map)} returns the tails that {@code completeAssembly()}
+   * would have returned, built from new Pipe instances.
+   *
+   * @return a new Template
+   */
+  public Template<Pipe> completeTemplate()
+    {
+    return recorder.complete( helper.completeAssembly() );
+    }
+  }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.FluidException;
+import cascading.fluid.factory.Recorder;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+
+/**
+ * Class AssemblyOptimizer rewrites the tails of a completed assembly, applying the rewrites enabled by the given
+ * {@link OptimizerOptions} in turn.
+ * <p/>
+ * Rewriting requires the assembly to have been recorded by a {@link Recorder}, so each pipe downstream of a
+ * rewritten pipe can be created again by its original constructor, with its original arguments and trace.
+ * Pipes upstream of any rewrite are returned as is.
+ */
+public class AssemblyOptimizer
+  {
+  private final OptimizerOptions options;
+
+  public AssemblyOptimizer( OptimizerOptions options )
+    {
+    if( options == null )
+      throw new IllegalArgumentException( "options may not be null" );
+
+    this.options = options;
+    }
+
+  public OptimizerOptions getOptions()
+    {
+    return options;
+    }
+
+  /**
+   * Method optimize returns the given tails rewritten by every enabled rewrite, without any estimated sizes or
+   * selectable joins.
+   *
+   * @param recorder the Recorder the assembly was recorded by
+   * @param tails    the tails of the assembly
+   * @return the rewritten tails, in the order given
+   */
+  public Pipe[] optimize( Recorder recorder, Pipe[] tails )
+    {
+    return optimize( recorder, tails, Collections.<Pipe, Long>emptyMap() );
+    }
+
+  /**
+   * Method optimize returns the given tails rewritten by every enabled rewrite, without any selectable joins.
+   *
+   * @param recorder  the Recorder the assembly was recorded by
+   * @param tails     the tails of the assembly
+   * @param estimates the estimated size in bytes of any pipe of the assembly
+   * @return the rewritten tails, in the order given
+   */
+  public Pipe[] optimize( Recorder recorder, Pipe[] tails, Map<Pipe, Long> estimates )
+    {
+    return optimize( recorder, tails, estimates, Collections.<Pipe>emptySet() );
+    }
+
+  /**
+   * Method optimize returns the given tails rewritten by every enabled rewrite.
+   *
+   * @param recorder   the Recorder the assembly was recorded by
+   * @param tails      the tails of the assembly
+   * @param estimates  the estimated size in bytes of any pipe of the assembly
+   * @param selectable the joins whose type may be selected, any other join is kept as built
+   * @return the rewritten tails, in the order given
+   */
+  public Pipe[] optimize( Recorder recorder, Pipe[] tails, Map<Pipe, Long> estimates, Set<Pipe> selectable )
+    {
+    if( recorder == null )
+      throw new FluidException( "assembly was not recorded, unable to optimize" );
+
+    // estimates are held against the pipes as built, so joins are selected first
+    if( options.getJoinMemoryBudget() != 0 )
+      tails = recorder.rewrite( tails, new JoinSelection( recorder, tails, estimates, selectable, options.getJoinMemoryBudget() ) );
+
+    if( options.isPushDownFilters() )
+      {
+      FilterPushDown pushDown = new FilterPushDown( recorder, tails );
+
+      while( pushDown.hasPushes() )
+        {
+        tails = recorder.rewrite( tails, pushDown );
+        pushDown = new FilterPushDown( recorder, tails );
+        }
+      }
+
+    if( options.isEarlyProjection() )
+      tails = recorder.rewrite( tails, new FieldProjection( recorder, tails ) );
+
+    if( options.isPartialAggregation() )
+      tails = recorder.rewrite( tails, new PartialAggregation( recorder, tails, options.getAggregateByThreshold() ) );
+
+    if( options.isFuseEach() )
+      tails = recorder.rewrite( tails, new EachFusion( recorder, tails ) );
+
+    return tails;
+    }
+
+  /** Returns true if the given pipe is a plain Each applying a Filter, and not a debug or assertion pipe. */
+  static boolean isFilter( Pipe pipe )
+    {
+    if( pipe.getClass() != Each.class )
+      return false;
+
+    Each each = (Each) pipe;
+
+    return each.isFilter() && !each.hasPlannerLevel();
+    }
+
+  /**
+   * Method countSuccessors returns the number of pipes consuming each pipe upstream of the given tails, where each
+   * tail counts as one more consumer of itself.
+   */
+  static Map<Pipe, Integer> countSuccessors( Pipe[] tails )
+    {
+    Map<Pipe, Integer> successors = new IdentityHashMap<Pipe, Integer>();
+
+    for( Pipe tail : tails )
+      addSuccessor( successors, tail );
+
+    return successors;
+    }
+
+  private static void addSuccessor( Map<Pipe, Integer> successors, Pipe pipe )
+    {
+    Integer count = successors.get( pipe );
+
+    successors.put( pipe, count == null ? 1 : count + 1 );
+
+    if( count != null )
+      return;
+
+    for( Pipe previous : pipe.getPrevious() )
+      addSuccessor( successors, previous );
+    }
+  }
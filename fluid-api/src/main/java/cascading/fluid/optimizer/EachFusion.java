@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Rewriter;
+import cascading.operation.Filter;
+import cascading.operation.Operation;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class EachFusion replaces each run of adjacent filtering {@link Each} pipes with a single Each applying a
+ * {@link FusedFilter}, saving a pipe, its argument selection and its tuple entry per run member.
+ * <p/>
+ * Only plain Each pipes with a declared argument selector, or {@link Fields#ALL} if the filter accepts any number
+ * of arguments, and no planner level are fused, so debug and assertion pipes remain subject to the planner. The
+ * trace of every fused pipe is retained by the {@link FusedFilter}, so failures still name their own call site. A pipe is only fused with its predecessor if it is the
+ * predecessor's only consumer, and the predecessor is not itself a tail.
+ * <p/>
+ * Function Each pipes are never fused, their results are only resolved against their output selector once the
+ * flow is planned.
+ */
+class EachFusion implements Rewriter
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( EachFusion.class );
+
+  private final Recorder recorder;
+  private final Map<Pipe, List<Each>> runs = new IdentityHashMap<Pipe, List<Each>>();
+  private final Set<Pipe> absorbed = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+  EachFusion( Recorder recorder, Pipe[] tails )
+    {
+    this.recorder = recorder;
+
+    Map<Pipe, Integer> successors = AssemblyOptimizer.countSuccessors( tails );
+    Set<Pipe> extended = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      if( extendsPrevious( pipe, successors ) )
+        extended.add( pipe.getPrevious()[ 0 ] );
+      }
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      if( extended.contains( pipe ) || !extendsPrevious( pipe, successors ) )
+        continue;
+
+      List<Each> run = new ArrayList<Each>();
+      Pipe current = pipe;
+
+      while( extendsPrevious( current, successors ) )
+        {
+        run.add( 0, (Each) current );
+        current = current.getPrevious()[ 0 ];
+        }
+
+      run.add( 0, (Each) current );
+
+      runs.put( pipe, run );
+      absorbed.addAll( run.subList( 0, run.size() - 1 ) );
+      }
+
+    LOG.debug( "found {} fusable runs of filters", runs.size() );
+    }
+
+  private static boolean extendsPrevious( Pipe pipe, Map<Pipe, Integer> successors )
+    {
+    if( !isFusable( pipe ) || pipe.getPrevious().length != 1 )
+      return false;
+
+    Pipe previous = pipe.getPrevious()[ 0 ];
+
+    return isFusable( previous ) && successors.get( previous ) == 1;
+    }
+
+  private static boolean isFusable( Pipe pipe )
+    {
+    if( !AssemblyOptimizer.isFilter( pipe ) )
+      return false;
+
+    Fields argumentSelector = ( (Each) pipe ).getArgumentSelector();
+
+    // the planner resolves all arguments against the number a filter expects, which is unknown until planned
+    if( argumentSelector.isAll() )
+      return ( (Each) pipe ).getFilter().getNumArgs() == Operation.ANY;
+
+    return argumentSelector.isDefined();
+    }
+
+  @Override
+  public Object rewrite( Object instance, Map<Object, Object> rebuilt )
+    {
+    if( absorbed.contains( instance ) )
+      return rebuilt( rebuilt, ( (Pipe) instance ).getPrevious()[ 0 ] );
+
+    List<Each> run = runs.get( instance );
+
+    if( run == null )
+      return null;
+
+    // members created outside the recorded builder were not rewritten, so the run starts after them
+    int start = run.size() - 1;
+
+    while( start > 0 && rebuilt.containsKey( run.get( start - 1 ) ) )
+      start--;
+
+    if( start == run.size() - 1 )
+      return null;
+
+    run = run.subList( start, run.size() );
+
+    Fields[] argumentSelectors = new Fields[ run.size() ];
+    Filter[] filters = new Filter[ run.size() ];
+    String[] traces = new String[ run.size() ];
+
+    for( int i = 0; i < run.size(); i++ )
+      {
+      argumentSelectors[ i ] = run.get( i ).getArgumentSelector();
+      filters[ i ] = run.get( i ).getFilter();
+      traces[ i ] = run.get( i ).getTrace();
+      }
+
+    Each first = run.get( 0 );
+    Pipe previous = rebuilt( rebuilt, first.getPrevious()[ 0 ] );
+    FusedFilter filter = new FusedFilter( argumentSelectors, filters, traces );
+    Each fused = new Each( previous, Fields.ALL, filter );
+
+    Reflection.setInstanceFieldIfExistsSafe( fused, "trace", first.getTrace() );
+
+    recorder.record( Each.class, new Class[]{Pipe.class, Fields.class, Filter.class}, new Object[]{previous, Fields.ALL, filter}, first.getTrace(), fused );
+
+    LOG.debug( "fused {} filters in branch: {}", run.size(), fused.getName() );
+
+    return fused;
+    }
+
+  private static Pipe rebuilt( Map<Object, Object> rebuilt, Pipe pipe )
+    {
+    Object result = rebuilt.get( pipe );
+
+    return result == null ? pipe : (Pipe) result;
+    }
+  }
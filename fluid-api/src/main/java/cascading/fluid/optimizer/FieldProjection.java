@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Rewriter;
+import cascading.operation.aggregator.Count;
+import cascading.pipe.Checkpoint;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Merge;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.Discard;
+import cascading.pipe.assembly.Rename;
+import cascading.pipe.assembly.Retain;
+import cascading.tuple.Fields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class FieldProjection computes the fields each pipe must provide to the pipes consuming it, and inserts a
+ * {@link Retain} of those fields after every head, and ahead of every {@link GroupBy}, so fewer fields are carried,
+ * shuffled and spilled.
+ * <p/>
+ * Required fields are only known by name, and only where every downstream pipe is understood: plain
+ * {@link Pipe}, {@link Checkpoint} and {@link Merge} pipes, {@link Each} pipes selecting arguments by name, a GroupBy
+ * and its {@link Every} pipes selecting arguments by name, and the {@link Retain}, {@link Discard} and {@link Rename}
+ * assemblies. A tail requires the fields it is known to provide, a {@link Retain}, or an Each declaring its results
+ * by name, and any pipes filtering them, and all fields otherwise. Any other pipe is assumed to require all fields,
+ * so no projection is made upstream of it.
+ * <p/>
+ * This includes every join. The fields a side contributes to a {@link cascading.pipe.CoGroup} or
+ * {@link cascading.pipe.HashJoin} are only resolved once the flow is planned, and the join may rename them, so a
+ * projection upstream of a join could select a field the side does not have. Pipes downstream of a join, including
+ * any GroupBy, are still projected.
+ * <p/>
+ * Only fields a downstream pipe selects from its input are ever retained, so a projection can never select a field
+ * that is not present.
+ */
+class FieldProjection implements Rewriter
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( FieldProjection.class );
+
+  private final Recorder recorder;
+  private final Set<Pipe> tails = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+  private final Map<Pipe, List<Pipe>> consumers = new IdentityHashMap<Pipe, List<Pipe>>();
+  private final Map<Pipe, Set<Comparable>> required = new IdentityHashMap<Pipe, Set<Comparable>>();
+  private final Map<Pipe, Fields> heads = new IdentityHashMap<Pipe, Fields>();
+  private final Map<Pipe, Fields> groupings = new IdentityHashMap<Pipe, Fields>();
+
+  FieldProjection( Recorder recorder, Pipe[] tails )
+    {
+    this.recorder = recorder;
+
+    Collections.addAll( this.tails, tails );
+
+    Set<Pipe> pipes = AssemblyOptimizer.countSuccessors( tails ).keySet();
+
+    for( Pipe pipe : pipes )
+      {
+      for( Pipe previous : pipe.getPrevious() )
+        getConsumers( previous ).add( pipe );
+      }
+
+    for( Pipe pipe : pipes )
+      {
+      if( !recorder.isRecorded( pipe ) )
+        continue;
+
+      if( pipe.getClass() == Pipe.class && pipe.getPrevious().length == 0 )
+        {
+        Set<Comparable> names = getRequired( pipe );
+
+        if( names != null && !names.isEmpty() )
+          heads.put( pipe, toFields( names ) );
+        }
+      else if( pipe.getClass() == GroupBy.class )
+        {
+        Set<Comparable> names = getGroupByNeed( (GroupBy) pipe );
+
+        if( names != null && !names.isEmpty() )
+          groupings.put( pipe, toFields( names ) );
+        }
+      }
+
+    for( Pipe pipe : new ArrayList<Pipe>( groupings.keySet() ) )
+      {
+      if( !needsProjection( pipe, groupings.get( pipe ) ) )
+        groupings.remove( pipe );
+      }
+
+    LOG.debug( "projecting {} heads and {} groupings", heads.size(), groupings.size() );
+    }
+
+  private List<Pipe> getConsumers( Pipe pipe )
+    {
+    List<Pipe> list = consumers.get( pipe );
+
+    if( list == null )
+      {
+      list = new ArrayList<Pipe>();
+      consumers.put( pipe, list );
+      }
+
+    return list;
+    }
+
+  /** Returns the names of the fields the consumers of the given pipe require, or null if all fields are required. */
+  private Set<Comparable> getRequired( Pipe pipe )
+    {
+    if( required.containsKey( pipe ) )
+      return required.get( pipe );
+
+    // a tail must still provide all it is known to provide, or every field if that is unknown
+    Set<Comparable> names = tails.contains( pipe ) ? getProvided( pipe, false ) : new LinkedHashSet<Comparable>();
+
+    if( names != null )
+      {
+      for( Pipe consumer : getConsumers( pipe ) )
+        {
+        Set<Comparable> need = getNeed( consumer );
+
+        if( need == null )
+          {
+          names = null;
+          break;
+          }
+
+        names.addAll( need );
+        }
+      }
+
+    required.put( pipe, names );
+
+    return names;
+    }
+
+  /** Returns the names of the fields the given pipe requires of its input, or null if all fields are required. */
+  private Set<Comparable> getNeed( Pipe pipe )
+    {
+    Class<? extends Pipe> type = pipe.getClass();
+
+    if( type == Pipe.class || type == Checkpoint.class || type == Merge.class )
+      return getRequired( pipe );
+
+    if( type == Each.class )
+      return getEachNeed( (Each) pipe );
+
+    if( type == GroupBy.class )
+      return getGroupByNeed( (GroupBy) pipe );
+
+    if( type == Retain.class )
+      return getRetainNeed( pipe );
+
+    if( type == Discard.class )
+      return getDiscardNeed( pipe );
+
+    if( type == Rename.class )
+      return getRenameNeed( pipe );
+
+    return null;
+    }
+
+  private Set<Comparable> getEachNeed( Each each )
+    {
+    Set<Comparable> need = new LinkedHashSet<Comparable>();
+
+    if( !addNames( need, each.getArgumentSelector() ) )
+      return null;
+
+    Set<Comparable> names = getRequired( each );
+
+    if( !each.isFunction() || each.getOutputSelector().isReplace() )
+      return addAll( need, names );
+
+    Fields outputSelector = each.getOutputSelector();
+
+    if( outputSelector.isResults() )
+      return need;
+
+    Fields declared = each.getOperation().getFieldDeclaration();
+
+    if( !isNamed( declared ) )
+      return null;
+
+    if( isNamed( outputSelector ) && names == null )
+      names = toNames( outputSelector );
+    else if( !outputSelector.isAll() && !outputSelector.isSwap() && !isNamed( outputSelector ) )
+      return null;
+
+    if( names == null )
+      return null;
+
+    // fields declared by the function are not required of the input
+    for( Comparable name : names )
+      {
+      if( indexOf( declared, name ) == -1 )
+        need.add( name );
+      }
+
+    return need;
+    }
+
+  private Set<Comparable> getGroupByNeed( GroupBy groupBy )
+    {
+    Set<Comparable> need = new LinkedHashSet<Comparable>();
+
+    if( !addNames( need, groupBy.getKeySelectors().values().iterator().next() ) )
+      return null;
+
+    if( groupBy.isSorted() && !addNames( need, groupBy.getSortingSelectors().values().iterator().next() ) )
+      return null;
+
+    List<Pipe> next = getConsumers( groupBy );
+    int numEvery = 0;
+
+    for( Pipe consumer : next )
+      {
+      if( consumer.getClass() == Every.class )
+        numEvery++;
+      }
+
+    if( numEvery == 0 )
+      return addAll( need, getRequired( groupBy ) );
+
+    if( numEvery != next.size() )
+      return null;
+
+    // the Every pipes only select from the grouped tuples, their results carry no other incoming field
+    Pipe current = groupBy;
+
+    while( !next.isEmpty() )
+      {
+      List<Pipe> everies = new ArrayList<Pipe>();
+
+      for( Pipe consumer : next )
+        {
+        if( consumer.getClass() == Every.class )
+          everies.add( consumer );
+        }
+
+      if( everies.isEmpty() )
+        break;
+
+      if( everies.size() != 1 || !addArguments( need, (Every) everies.get( 0 ) ) )
+        return null;
+
+      current = everies.get( 0 );
+      next = getConsumers( current );
+      }
+
+    return need;
+    }
+
+  private static boolean addArguments( Set<Comparable> need, Every every )
+    {
+    if( every.isBuffer() )
+      return false;
+
+    // Count counts every tuple, regardless of the arguments given
+    if( every.getOperation().getClass() == Count.class )
+      return true;
+
+    return addNames( need, every.getArgumentSelector() );
+    }
+
+  /** Returns the names of the given fields argument of the given assembly, or null if not recorded or not named. */
+  private Set<Comparable> getNamedArgument( Pipe assembly, int length, int index )
+    {
+    Object[] arguments = recorder.getArguments( assembly );
+
+    if( arguments == null || arguments.length != length || !isNamed( (Fields) arguments[ index ] ) )
+      return null;
+
+    return toNames( (Fields) arguments[ index ] );
+    }
+
+  // Retain, Discard and Rename each select their own fields argument, so those fields are always required
+
+  private Set<Comparable> getRetainNeed( Pipe retain )
+    {
+    Set<Comparable> need = getNamedArgument( retain, 2, 1 );
+
+    if( need == null )
+      return null;
+
+    Set<Comparable> names = getRequired( retain );
+
+    if( names != null )
+      need.addAll( names );
+
+    return need;
+    }
+
+  private Set<Comparable> getDiscardNeed( Pipe discard )
+    {
+    Set<Comparable> need = getNamedArgument( discard, 2, 1 );
+
+    if( need == null )
+      return null;
+
+    return addAll( need, getRequired( discard ) );
+    }
+
+  private Set<Comparable> getRenameNeed( Pipe rename )
+    {
+    Set<Comparable> need = getNamedArgument( rename, 3, 1 );
+    Set<Comparable> to = getNamedArgument( rename, 3, 2 );
+    Set<Comparable> names = getRequired( rename );
+
+    if( need == null || to == null || names == null || need.size() != to.size() )
+      return null;
+
+    Fields fromFields = toFields( need );
+    Fields toFields = toFields( to );
+
+    for( Comparable name : names )
+      {
+      int pos = indexOf( toFields, name );
+
+      need.add( pos == -1 ? name : fromFields.get( pos ) );
+      }
+
+    return need;
+    }
+
+  /** Returns false if the given pipe already provides no more than the given fields, or any side of it does. */
+  private boolean needsProjection( Pipe pipe, Fields fields )
+    {
+    Set<Comparable> names = toNames( fields );
+
+    for( Pipe previous : pipe.getPrevious() )
+      {
+      if( !isNarrow( previous, names ) )
+        return true;
+      }
+
+    return false;
+    }
+
+  private boolean isNarrow( Pipe pipe, Set<Comparable> names )
+    {
+    Set<Comparable> provided = getProvided( pipe, true );
+
+    return provided != null && names.containsAll( provided );
+    }
+
+  /** Returns the names of all the fields the given pipe provides, if known, optionally once its heads are projected. */
+  private Set<Comparable> getProvided( Pipe pipe, boolean projected )
+    {
+    if( projected && heads.containsKey( pipe ) )
+      return toNames( heads.get( pipe ) );
+
+    Class<? extends Pipe> type = pipe.getClass();
+
+    boolean isFilter = type == Each.class && !( (Each) pipe ).isFunction();
+
+    if( ( type == Pipe.class || type == Checkpoint.class || isFilter ) && pipe.getPrevious().length == 1 )
+      return getProvided( pipe.getPrevious()[ 0 ], projected );
+
+    if( type == Retain.class )
+      return getNamedArgument( pipe, 2, 1 );
+
+    if( type == Each.class && ( (Each) pipe ).isFunction() )
+      {
+      Fields outputSelector = ( (Each) pipe ).getOutputSelector();
+      Fields declared = ( (Each) pipe ).getOperation().getFieldDeclaration();
+
+      if( outputSelector.isResults() && isNamed( declared ) )
+        return toNames( declared );
+
+      if( isNamed( outputSelector ) )
+        return toNames( outputSelector );
+      }
+
+    return null;
+    }
+
+  private static Set<Comparable> addAll( Set<Comparable> need, Set<Comparable> names )
+    {
+    if( names == null )
+      return null;
+
+    need.addAll( names );
+
+    return need;
+    }
+
+  private static boolean addNames( Set<Comparable> names, Fields fields )
+    {
+    if( fields == null )
+      return false;
+
+    if( fields.isNone() )
+      return true;
+
+    if( !isNamed( fields ) )
+      return false;
+
+    names.addAll( toNames( fields ) );
+
+    return true;
+    }
+
+  private static boolean isNamed( Fields fields )
+    {
+    if( fields == null || !fields.isDefined() || fields.size() == 0 )
+      return false;
+
+    for( int i = 0; i < fields.size(); i++ )
+      {
+      if( !( fields.get( i ) instanceof String ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  private static Set<Comparable> toNames( Fields fields )
+    {
+    Set<Comparable> names = new LinkedHashSet<Comparable>();
+
+    for( int i = 0; i < fields.size(); i++ )
+      names.add( fields.get( i ) );
+
+    return names;
+    }
+
+  private static Fields toFields( Set<Comparable> names )
+    {
+    return new Fields( names.toArray( new Comparable[ names.size() ] ) );
+    }
+
+  private static int indexOf( Fields fields, Comparable name )
+    {
+    for( int i = 0; i < fields.size(); i++ )
+      {
+      if( fields.get( i ).equals( name ) )
+        return i;
+      }
+
+    return -1;
+    }
+
+  @Override
+  public Object rewrite( Object instance, Map<Object, Object> rebuilt )
+    {
+    Fields fields = heads.get( instance );
+
+    if( fields != null )
+      return project( (Pipe) instance, fields, ( (Pipe) instance ).getTrace() );
+
+    fields = groupings.get( instance );
+
+    if( fields == null )
+      return null;
+
+    GroupBy groupBy = (GroupBy) instance;
+    Set<Comparable> names = toNames( fields );
+    Map<Object, Object> replacements = new IdentityHashMap<Object, Object>( rebuilt );
+
+    for( Pipe previous : groupBy.getPrevious() )
+      {
+      if( isNarrow( previous, names ) )
+        continue;
+
+      Pipe rebuiltPrevious = rebuilt.containsKey( previous ) ? (Pipe) rebuilt.get( previous ) : previous;
+
+      replacements.put( previous, project( rebuiltPrevious, fields, groupBy.getTrace() ) );
+      }
+
+    return recorder.recreate( groupBy, replacements );
+    }
+
+  private Pipe project( Pipe pipe, Fields fields, String trace )
+    {
+    Retain retain = new Retain( pipe, fields );
+
+    Reflection.setInstanceFieldIfExistsSafe( retain, "trace", trace );
+
+    recorder.record( Retain.class, new Class[]{Pipe.class, Fields.class}, new Object[]{pipe, fields}, trace, retain );
+
+    LOG.debug( "retaining {} after: {}", fields, pipe.getName() );
+
+    return retain;
+    }
+  }
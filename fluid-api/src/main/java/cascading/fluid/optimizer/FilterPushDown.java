@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Rewriter;
+import cascading.operation.Filter;
+import cascading.operation.expression.ExpressionFilter;
+import cascading.operation.filter.FilterNotNull;
+import cascading.operation.filter.FilterNull;
+import cascading.operation.regex.RegexFilter;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.Coerce;
+import cascading.pipe.assembly.Rename;
+import cascading.pipe.assembly.Retain;
+import cascading.tuple.Fields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class FilterPushDown moves each filtering {@link Each} pipe ahead of the pipe it follows, where doing so cannot
+ * change which tuples are removed.
+ * <p/>
+ * A filter is moved ahead of a {@link Rename}, remapping its argument selector to the original field names, ahead
+ * of a {@link Retain}, and ahead of a {@link Coerce} that does not coerce any of its arguments. A filter following a
+ * {@link GroupBy}, and any {@link Every} pipes, is moved ahead of the GroupBy if it only selects grouping fields
+ * that no Every operation declares and that have no comparators, as every tuple of a group then shares the grouping
+ * values the filter is given. Only filters known to decide each tuple on its values alone, like {@link RegexFilter},
+ * are moved ahead of a GroupBy, as the filter then sees the tuples before they are partitioned and ordered.
+ * <p/>
+ * Only filters selecting fields by name are moved, and only if every pipe moved past has no other consumer.
+ * A filter is moved one pipe per rewrite, {@link AssemblyOptimizer} rewrites until no filter can be moved.
+ */
+class FilterPushDown implements Rewriter
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( FilterPushDown.class );
+
+  /** Filters that may be moved ahead of a GroupBy, unlike order dependent filters like Limit or Sample. */
+  private static final Set<Class<?>> STATELESS_FILTERS = new HashSet<Class<?>>( Arrays.<Class<?>>asList(
+    RegexFilter.class, FilterNull.class, FilterNotNull.class, ExpressionFilter.class
+  ) );
+
+  private final Recorder recorder;
+  private final Map<Pipe, Push> pushes = new IdentityHashMap<Pipe, Push>();
+  private final Set<Pipe> pushed = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+  private static class Push
+    {
+    final Each each;
+    final Fields argumentSelector;
+
+    Push( Each each, Fields argumentSelector )
+      {
+      this.each = each;
+      this.argumentSelector = argumentSelector;
+      }
+    }
+
+  FilterPushDown( Recorder recorder, Pipe[] tails )
+    {
+    this.recorder = recorder;
+
+    Map<Pipe, Integer> successors = AssemblyOptimizer.countSuccessors( tails );
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      if( !AssemblyOptimizer.isFilter( pipe ) || pipe.getPrevious().length != 1 || !recorder.isRecorded( pipe ) )
+        continue;
+
+      Each each = (Each) pipe;
+
+      if( !isNamed( each.getArgumentSelector() ) )
+        continue;
+
+      Pipe previous = each.getPrevious()[ 0 ];
+      Pipe entry = getEntry( previous, each.getArgumentSelector(), each.getFilter(), successors );
+
+      if( entry == null )
+        continue;
+
+      Fields argumentSelector = each.getArgumentSelector();
+
+      if( entry instanceof Rename )
+        argumentSelector = remap( (Rename) entry, argumentSelector );
+
+      if( argumentSelector == null )
+        continue;
+
+      pushes.put( entry, new Push( each, argumentSelector ) );
+      pushed.add( each );
+      }
+
+    LOG.debug( "found {} filters to push down", pushes.size() );
+    }
+
+  boolean hasPushes()
+    {
+    return !pushes.isEmpty();
+    }
+
+  /** Returns the pipe the filter may be moved ahead of, or null if the filter must stay where it is. */
+  private Pipe getEntry( Pipe previous, Fields argumentSelector, Filter filter, Map<Pipe, Integer> successors )
+    {
+    if( !isMovable( previous, successors ) )
+      return null;
+
+    Class<? extends Pipe> type = previous.getClass();
+
+    if( type == Rename.class || type == Retain.class )
+      return previous;
+
+    if( type == Coerce.class )
+      return isDisjoint( getFieldsArgument( previous ), argumentSelector ) ? previous : null;
+
+    Pipe current = previous;
+    boolean hasEvery = false;
+
+    while( current.getClass() == Every.class )
+      {
+      Every every = (Every) current;
+
+      if( every.hasPlannerLevel() || !isDisjoint( every.getOperation().getFieldDeclaration(), argumentSelector ) )
+        return null;
+
+      hasEvery = true;
+      current = current.getPrevious()[ 0 ];
+
+      if( !isMovable( current, successors ) )
+        return null;
+      }
+
+    if( current.getClass() != GroupBy.class )
+      return null;
+
+    // the filter would see the tuples map side, in a different order and partitioning
+    if( !isStateless( filter ) )
+      return null;
+
+    Fields groupingFields = getGroupingFields( (GroupBy) current );
+
+    // grouping comparators may group differing values, only one of which is seen by the filter
+    if( hasEvery && ( !isSubset( groupingFields, argumentSelector ) || groupingFields.hasComparators() ) )
+      return null;
+
+    return current;
+    }
+
+  /** Returns true if the given filter is known to decide each tuple on its argument values alone. */
+  private static boolean isStateless( Filter filter )
+    {
+    return STATELESS_FILTERS.contains( filter.getClass() );
+    }
+
+  private boolean isMovable( Pipe pipe, Map<Pipe, Integer> successors )
+    {
+    return successors.get( pipe ) == 1 && pipe.getPrevious().length == 1 && recorder.isRecorded( pipe );
+    }
+
+  private Fields getFieldsArgument( Pipe pipe )
+    {
+    Object[] arguments = recorder.getArguments( pipe );
+
+    for( int i = 1; i < arguments.length; i++ )
+      {
+      if( arguments[ i ] instanceof Fields )
+        return (Fields) arguments[ i ];
+      }
+
+    return null;
+    }
+
+  private static Fields getGroupingFields( GroupBy groupBy )
+    {
+    Map<String, Fields> keySelectors = groupBy.getKeySelectors();
+
+    return keySelectors.size() == 1 ? keySelectors.values().iterator().next() : null;
+    }
+
+  /** Returns the given selector with renamed fields given their original names, or null if not a simple rename. */
+  private Fields remap( Rename rename, Fields argumentSelector )
+    {
+    Object[] arguments = recorder.getArguments( rename );
+
+    if( arguments.length != 3 || !isNamed( (Fields) arguments[ 1 ] ) || !isNamed( (Fields) arguments[ 2 ] ) )
+      return null;
+
+    Fields fromFields = (Fields) arguments[ 1 ];
+    Fields toFields = (Fields) arguments[ 2 ];
+
+    if( fromFields.size() != toFields.size() )
+      return null;
+
+    Comparable[] names = new Comparable[ argumentSelector.size() ];
+
+    for( int i = 0; i < names.length; i++ )
+      {
+      names[ i ] = argumentSelector.get( i );
+
+      int pos = indexOf( toFields, names[ i ] );
+
+      if( pos != -1 )
+        names[ i ] = fromFields.get( pos );
+      else if( indexOf( fromFields, names[ i ] ) != -1 )
+        return null;
+      }
+
+    Type[] types = argumentSelector.getTypes();
+
+    return types == null ? new Fields( names ) : new Fields( names, types );
+    }
+
+  private static boolean isNamed( Fields fields )
+    {
+    if( fields == null || !fields.isDefined() || fields.size() == 0 )
+      return false;
+
+    for( int i = 0; i < fields.size(); i++ )
+      {
+      if( !( fields.get( i ) instanceof String ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  private static boolean isDisjoint( Fields fields, Fields argumentSelector )
+    {
+    if( fields == null || !isNamed( fields ) )
+      return false;
+
+    for( int i = 0; i < argumentSelector.size(); i++ )
+      {
+      if( indexOf( fields, argumentSelector.get( i ) ) != -1 )
+        return false;
+      }
+
+    return true;
+    }
+
+  private static boolean isSubset( Fields fields, Fields argumentSelector )
+    {
+    if( fields == null || !isNamed( fields ) )
+      return false;
+
+    for( int i = 0; i < argumentSelector.size(); i++ )
+      {
+      if( indexOf( fields, argumentSelector.get( i ) ) == -1 )
+        return false;
+      }
+
+    return true;
+    }
+
+  private static int indexOf( Fields fields, Comparable name )
+    {
+    for( int i = 0; i < fields.size(); i++ )
+      {
+      if( fields.get( i ).equals( name ) )
+        return i;
+      }
+
+    return -1;
+    }
+
+  @Override
+  public Object rewrite( Object instance, Map<Object, Object> rebuilt )
+    {
+    if( pushed.contains( instance ) )
+      return rebuilt.get( ( (Pipe) instance ).getPrevious()[ 0 ] );
+
+    Push push = pushes.get( instance );
+
+    if( push == null )
+      return null;
+
+    Pipe entry = (Pipe) instance;
+    Pipe previous = entry.getPrevious()[ 0 ];
+    Pipe rebuiltPrevious = rebuilt.containsKey( previous ) ? (Pipe) rebuilt.get( previous ) : previous;
+    Filter filter = push.each.getFilter();
+    Each each = new Each( rebuiltPrevious, push.argumentSelector, filter );
+
+    Reflection.setInstanceFieldIfExistsSafe( each, "trace", push.each.getTrace() );
+
+    recorder.record( Each.class, new Class[]{Pipe.class, Fields.class, Filter.class}, new Object[]{rebuiltPrevious, push.argumentSelector, filter}, push.each.getTrace(), each );
+
+    Map<Object, Object> replacements = new IdentityHashMap<Object, Object>( rebuilt );
+
+    replacements.put( previous, each );
+
+    LOG.debug( "pushed filter ahead of: {}", entry );
+
+    return recorder.recreate( entry, replacements );
+    }
+  }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.util.Arrays;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.ConcreteCall;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.Operation;
+import cascading.operation.OperationException;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Class FusedFilter applies a sequence of {@link Filter} operations, each against its own argument selector, within
+ * a single {@link cascading.pipe.Each} pipe.
+ * <p/>
+ * A tuple is removed as soon as any filter removes it, the remaining filters are not called, exactly as if each
+ * filter was applied by its own Each pipe in the given order. Each filter is given its own
+ * {@link OperationCall}, and so its own context.
+ * <p/>
+ * The trace of the pipe each filter was given to may be retained, any exception thrown by a filter is then rethrown
+ * as an {@link OperationException} naming that trace, rather than the trace of the fused Each.
+ * <p/>
+ * FusedFilter expects to be given all incoming fields as its arguments.
+ *
+ * @see EachFusion
+ */
+public class FusedFilter extends BaseOperation<ConcreteCall[]> implements Filter<ConcreteCall[]>
+  {
+  private final Fields[] argumentSelectors;
+  private final Filter[] filters;
+  private final String[] traces;
+
+  public FusedFilter( Fields[] argumentSelectors, Filter[] filters )
+    {
+    this( argumentSelectors, filters, new String[ filters.length ] );
+    }
+
+  public FusedFilter( Fields[] argumentSelectors, Filter[] filters, String[] traces )
+    {
+    if( argumentSelectors.length != filters.length || traces.length != filters.length )
+      throw new IllegalArgumentException( "must give an argument selector and trace for every filter" );
+
+    this.argumentSelectors = argumentSelectors;
+    this.filters = filters;
+    this.traces = traces;
+
+    verifyNumArgs();
+    }
+
+  /** Applies the check the planner applies to each filter given its own Each, as the fused Each accepts any. */
+  private void verifyNumArgs()
+    {
+    for( int i = 0; i < filters.length; i++ )
+      {
+      int numArgs = filters[ i ].getNumArgs();
+
+      if( numArgs == Operation.ANY || !argumentSelectors[ i ].isDefined() || argumentSelectors[ i ].size() >= numArgs )
+        continue;
+
+      throw new OperationException( format( i, "resolved wrong number of arguments: " + argumentSelectors[ i ].printVerbose() + ", expected: " + numArgs ) );
+      }
+    }
+
+  public Fields[] getArgumentSelectors()
+    {
+    return Arrays.copyOf( argumentSelectors, argumentSelectors.length );
+    }
+
+  public Filter[] getFilters()
+    {
+    return Arrays.copyOf( filters, filters.length );
+    }
+
+  public String[] getTraces()
+    {
+    return Arrays.copyOf( traces, traces.length );
+    }
+
+  private String format( int index, String message )
+    {
+    return traces[ index ] == null ? message : "[" + traces[ index ] + "] " + message;
+    }
+
+  private RuntimeException failed( int index, RuntimeException exception )
+    {
+    if( traces[ index ] == null )
+      return exception;
+
+    return new OperationException( format( index, "filter failed: " + filters[ index ] ), exception );
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<ConcreteCall[]> operationCall )
+    {
+    Fields argumentFields = operationCall.getArgumentFields();
+    ConcreteCall[] calls = new ConcreteCall[ filters.length ];
+    int i = 0;
+
+    try
+      {
+      for( ; i < filters.length; i++ )
+        {
+        Fields fields = argumentSelectors[ i ].isAll() ? argumentFields : argumentFields.select( argumentSelectors[ i ] );
+
+        calls[ i ] = new ConcreteCall( fields );
+        calls[ i ].setArguments( new TupleEntry( fields, true ) );
+
+        filters[ i ].prepare( flowProcess, calls[ i ] );
+        }
+      }
+    catch( RuntimeException exception )
+      {
+      throw failed( i, exception );
+      }
+
+    operationCall.setContext( calls );
+    }
+
+  @Override
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<ConcreteCall[]> filterCall )
+    {
+    ConcreteCall[] calls = filterCall.getContext();
+    TupleEntry arguments = filterCall.getArguments();
+    int i = 0;
+
+    try
+      {
+      for( ; i < filters.length; i++ )
+        {
+        if( argumentSelectors[ i ].isAll() )
+          calls[ i ].setArguments( arguments );
+        else
+          calls[ i ].getArguments().setTuple( arguments.selectTuple( argumentSelectors[ i ] ) );
+
+        if( filters[ i ].isRemove( flowProcess, calls[ i ] ) )
+          return true;
+        }
+      }
+    catch( RuntimeException exception )
+      {
+      throw failed( i, exception );
+      }
+
+    return false;
+    }
+
+  @Override
+  public void flush( FlowProcess flowProcess, OperationCall<ConcreteCall[]> operationCall )
+    {
+    ConcreteCall[] calls = operationCall.getContext();
+    int i = 0;
+
+    try
+      {
+      for( ; i < filters.length; i++ )
+        filters[ i ].flush( flowProcess, calls[ i ] );
+      }
+    catch( RuntimeException exception )
+      {
+      throw failed( i, exception );
+      }
+    }
+
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<ConcreteCall[]> operationCall )
+    {
+    ConcreteCall[] calls = operationCall.getContext();
+    int i = 0;
+
+    try
+      {
+      for( ; i < filters.length; i++ )
+        filters[ i ].cleanup( flowProcess, calls[ i ] );
+      }
+    catch( RuntimeException exception )
+      {
+      throw failed( i, exception );
+      }
+    }
+
+  @Override
+  public boolean isSafe()
+    {
+    for( Filter filter : filters )
+      {
+      if( !filter.isSafe() )
+        return false;
+      }
+
+    return true;
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !( object instanceof FusedFilter ) )
+      return false;
+    if( !super.equals( object ) )
+      return false;
+
+    FusedFilter that = (FusedFilter) object;
+
+    return Arrays.equals( argumentSelectors, that.argumentSelectors ) && Arrays.equals( filters, that.filters );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = super.hashCode();
+
+    result = 31 * result + Arrays.hashCode( argumentSelectors );
+    result = 31 * result + Arrays.hashCode( filters );
+
+    return result;
+    }
+  }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Rewriter;
+import cascading.pipe.CoGroup;
+import cascading.pipe.Every;
+import cascading.pipe.HashJoin;
+import cascading.pipe.Pipe;
+import cascading.pipe.Splice;
+import cascading.pipe.joiner.BufferJoin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class JoinSelection replaces a {@link CoGroup} with a {@link HashJoin} when the estimated size of every accumulated
+ * side, all but the first pipe joined, fits the memory budget, and a HashJoin with a CoGroup when it does not.
+ * <p/>
+ * Only selectable joins, those started via startJoin(), are considered. A join the user started as a CoGroup or a
+ * HashJoin is kept as built.
+ * <p/>
+ * The size of a pipe is the size estimated on it, or else the size of its single predecessor, or the sum of the sizes
+ * of all its predecessors. A join is left as is if any accumulated side has no size, if a CoGroup is followed by an
+ * {@link Every} pipe or joins via a {@link BufferJoin}, or if the other join type has no matching constructor.
+ * <p/>
+ * Every decision is logged, and set under {@link #DECISION_PROPERTY} on the config def of every join created again.
+ * A join kept unchanged is returned as built, so the caller's instance is never modified.
+ */
+class JoinSelection implements Rewriter
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( JoinSelection.class );
+
+  public static final String DECISION_PROPERTY = "cascading.fluid.optimizer.join";
+
+  private final Recorder recorder;
+  private final Map<Pipe, Class<? extends Splice>> selected = new IdentityHashMap<Pipe, Class<? extends Splice>>();
+  private final Map<Pipe, String> decisions = new IdentityHashMap<Pipe, String>();
+
+  JoinSelection( Recorder recorder, Pipe[] tails, Map<Pipe, Long> estimates, Set<Pipe> selectable, long memoryBudget )
+    {
+    this.recorder = recorder;
+
+    Map<Pipe, Integer> successors = AssemblyOptimizer.countSuccessors( tails );
+    Map<Pipe, Long> sizes = new IdentityHashMap<Pipe, Long>( estimates );
+    Set<Pipe> grouped = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      if( pipe.getClass() == Every.class )
+        grouped.add( pipe.getPrevious()[ 0 ] );
+      }
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      Class<? extends Pipe> type = pipe.getClass();
+
+      if( ( type != CoGroup.class && type != HashJoin.class ) || pipe.getPrevious().length < 2 || !recorder.isRecorded( pipe ) )
+        continue;
+
+      if( !selectable.contains( pipe ) )
+        {
+        LOG.debug( "join: {}, not started via startJoin(), keeping: {}", pipe.getName(), type.getSimpleName() );
+        continue;
+        }
+
+      Long accumulated = getAccumulatedSize( pipe, sizes );
+
+      if( accumulated == null )
+        {
+        LOG.debug( "no size estimated for join: {}, keeping: {}", pipe.getName(), type.getSimpleName() );
+        continue;
+        }
+
+      Class<? extends Splice> target = accumulated <= memoryBudget ? HashJoin.class : CoGroup.class;
+
+      if( target == HashJoin.class && ( grouped.contains( pipe ) || hasBufferJoin( recorder.getArguments( pipe ) ) ) )
+        target = CoGroup.class;
+
+      if( target != type && !hasConstructor( target, recorder.getParameterTypes( pipe ) ) )
+        target = (Class<? extends Splice>) type;
+
+      String decision = String.format( "%s, accumulated size: %d bytes, memory budget: %d bytes", target.getSimpleName(), accumulated, memoryBudget );
+
+      LOG.info( "selected join: {}, for: {}", decision, pipe.getName() );
+
+      selected.put( pipe, target );
+      decisions.put( pipe, decision );
+      }
+    }
+
+  /** Returns the summed size of every pipe accumulated by a HashJoin, or null if any is unknown. */
+  private static Long getAccumulatedSize( Pipe join, Map<Pipe, Long> sizes )
+    {
+    Pipe[] previous = join.getPrevious();
+    long accumulated = 0;
+
+    for( int i = 1; i < previous.length; i++ )
+      {
+      Long size = getSize( previous[ i ], sizes );
+
+      if( size == null )
+        return null;
+
+      accumulated += size;
+      }
+
+    return accumulated;
+    }
+
+  private static Long getSize( Pipe pipe, Map<Pipe, Long> sizes )
+    {
+    if( sizes.containsKey( pipe ) )
+      return sizes.get( pipe );
+
+    Pipe[] previous = pipe.getPrevious();
+    Long size = null;
+
+    if( previous.length == 1 )
+      {
+      size = getSize( previous[ 0 ], sizes );
+      }
+    else if( previous.length > 1 )
+      {
+      size = 0L;
+
+      for( Pipe prior : previous )
+        {
+        Long priorSize = getSize( prior, sizes );
+
+        if( priorSize == null )
+          {
+          size = null;
+          break;
+          }
+
+        size += priorSize;
+        }
+      }
+
+    sizes.put( pipe, size );
+
+    return size;
+    }
+
+  private static boolean hasBufferJoin( Object[] arguments )
+    {
+    for( Object argument : arguments )
+      {
+      if( argument instanceof BufferJoin )
+        return true;
+      }
+
+    return false;
+    }
+
+  private static boolean hasConstructor( Class<?> type, Class[] parameterTypes )
+    {
+    try
+      {
+      type.getConstructor( parameterTypes );
+
+      return true;
+      }
+    catch( NoSuchMethodException exception )
+      {
+      return false;
+      }
+    }
+
+  @Override
+  public Object rewrite( Object instance, Map<Object, Object> rebuilt )
+    {
+    Class<? extends Splice> type = selected.get( instance );
+
+    if( type == null )
+      return null;
+
+    Splice join = (Splice) instance;
+
+    if( type == join.getClass() && !isChanged( join, rebuilt ) )
+      return join;
+
+    join = recorder.recreate( instance, type, rebuilt );
+
+    join.getConfigDef().setProperty( DECISION_PROPERTY, decisions.get( instance ) );
+
+    return join;
+    }
+
+  private static boolean isChanged( Pipe pipe, Map<Object, Object> rebuilt )
+    {
+    for( Pipe previous : pipe.getPrevious() )
+      {
+      if( rebuilt.containsKey( previous ) && rebuilt.get( previous ) != previous )
+        return true;
+      }
+
+    return false;
+    }
+  }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+/**
+ * Class OptimizerOptions selects the rewrites applied by an {@link AssemblyOptimizer} to a completed assembly.
+ * <p/>
+ * All rewrites are disabled by default.
+ *
+ * @see cascading.fluid.Fluid#assembly(OptimizerOptions)
+ */
+public class OptimizerOptions
+  {
+  private long joinMemoryBudget = 0;
+  private boolean pushDownFilters = false;
+  private boolean earlyProjection = false;
+  private boolean partialAggregation = false;
+  private int aggregateByThreshold = 0;
+  private boolean fuseEach = false;
+
+  public OptimizerOptions()
+    {
+    }
+
+  public long getJoinMemoryBudget()
+    {
+    return joinMemoryBudget;
+    }
+
+  /**
+   * Method setJoinMemoryBudget enables selecting between a {@link cascading.pipe.CoGroup} and a
+   * {@link cascading.pipe.HashJoin} for each join started via startJoin(), given the sizes estimated on its branches.
+   * Joins started via startCoGroup() or startHashJoin() are kept as built.
+   * <p/>
+   * A HashJoin is selected if the summed estimated size of every pipe it accumulates, all but the first, fits within
+   * the given budget, otherwise a CoGroup is selected. Joins are selected before any other rewrite is applied.
+   *
+   * @param joinMemoryBudget the bytes a HashJoin may accumulate, or zero to keep every join as built
+   * @return this instance
+   */
+  public OptimizerOptions setJoinMemoryBudget( long joinMemoryBudget )
+    {
+    if( joinMemoryBudget < 0 )
+      throw new IllegalArgumentException( "memory budget may not be negative" );
+
+    this.joinMemoryBudget = joinMemoryBudget;
+
+    return this;
+    }
+
+  public boolean isPushDownFilters()
+    {
+    return pushDownFilters;
+    }
+
+  /**
+   * Method setPushDownFilters enables moving filtering {@link cascading.pipe.Each} pipes ahead of any preceding
+   * {@link cascading.pipe.assembly.Rename}, {@link cascading.pipe.assembly.Retain} or
+   * {@link cascading.pipe.assembly.Coerce} pipe, and ahead of a {@link cascading.pipe.GroupBy} when only grouping
+   * fields are filtered on, so fewer tuples are projected and shuffled.
+   * <p/>
+   * Filters are pushed down after joins are selected, and before any other rewrite is applied.
+   *
+   * @param pushDownFilters true if filters should be pushed towards the heads
+   * @return this instance
+   */
+  public OptimizerOptions setPushDownFilters( boolean pushDownFilters )
+    {
+    this.pushDownFilters = pushDownFilters;
+
+    return this;
+    }
+
+  public boolean isEarlyProjection()
+    {
+    return earlyProjection;
+    }
+
+  /**
+   * Method setEarlyProjection enables inserting a {@link cascading.pipe.assembly.Retain} after every head, and ahead
+   * of every {@link cascading.pipe.GroupBy}, of only the fields required downstream, when those fields are known by
+   * name. Nothing is projected upstream of a join, as the fields each side contributes are only known once the flow
+   * is planned.
+   * <p/>
+   * Fields are projected after filters are pushed down, and before groupings are partially aggregated.
+   *
+   * @param earlyProjection true if unused fields should be discarded as early as possible
+   * @return this instance
+   */
+  public OptimizerOptions setEarlyProjection( boolean earlyProjection )
+    {
+    this.earlyProjection = earlyProjection;
+
+    return this;
+    }
+
+  public boolean isPartialAggregation()
+    {
+    return partialAggregation;
+    }
+
+  /**
+   * Method setPartialAggregation enables replacing a {@link cascading.pipe.GroupBy} and the {@link cascading.pipe.Every}
+   * pipes following it with an {@link cascading.pipe.assembly.AggregateBy}, when every Every applies a
+   * {@link cascading.operation.aggregator.Count}, {@link cascading.operation.aggregator.Sum},
+   * {@link cascading.operation.aggregator.Average} or {@link cascading.operation.aggregator.First} aggregator.
+   *
+   * @param partialAggregation true if groupings should be partially aggregated before the shuffle
+   * @return this instance
+   */
+  public OptimizerOptions setPartialAggregation( boolean partialAggregation )
+    {
+    this.partialAggregation = partialAggregation;
+
+    return this;
+    }
+
+  public int getAggregateByThreshold()
+    {
+    return aggregateByThreshold;
+    }
+
+  /**
+   * Method setAggregateByThreshold sets the number of unique groups each AggregateBy created by partial aggregation
+   * caches before flushing partial results, zero uses the AggregateBy default.
+   *
+   * @param aggregateByThreshold the cache threshold
+   * @return this instance
+   */
+  public OptimizerOptions setAggregateByThreshold( int aggregateByThreshold )
+    {
+    if( aggregateByThreshold < 0 )
+      throw new IllegalArgumentException( "threshold may not be negative" );
+
+    this.aggregateByThreshold = aggregateByThreshold;
+
+    return this;
+    }
+
+  public boolean isFuseEach()
+    {
+    return fuseEach;
+    }
+
+  /**
+   * Method setFuseEach enables fusing runs of adjacent filtering {@link cascading.pipe.Each} pipes into a single
+   * Each applying a {@link FusedFilter}.
+   * <p/>
+   * Only filters are fused. Each pipes applying a {@link cascading.operation.Function} are kept as built, since their
+   * results are only resolved against their output selector once the flow is planned.
+   *
+   * @param fuseEach true if adjacent filters should be fused
+   * @return this instance
+   */
+  public OptimizerOptions setFuseEach( boolean fuseEach )
+    {
+    this.fuseEach = fuseEach;
+
+    return this;
+    }
+  }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cascading.fluid.optimizer;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cascading.fluid.factory.Recorder;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Rewriter;
+import cascading.operation.Aggregator;
+import cascading.operation.aggregator.Average;
+import cascading.operation.aggregator.Count;
+import cascading.operation.aggregator.First;
+import cascading.operation.aggregator.Sum;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
+import cascading.pipe.assembly.AverageBy;
+import cascading.pipe.assembly.CountBy;
+import cascading.pipe.assembly.FirstBy;
+import cascading.pipe.assembly.SumBy;
+import cascading.tuple.Fields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class PartialAggregation replaces a {@link GroupBy} followed only by {@link Every} pipes applying {@link Count},
+ * {@link Sum}, {@link Average} or {@link First} aggregators with a single {@link AggregateBy} composed of the
+ * equivalent {@link CountBy}, {@link SumBy}, {@link AverageBy} and {@link FirstBy} assemblies, so each group is
+ * partially aggregated before the shuffle.
+ * <p/>
+ * A GroupBy is only replaced if it is neither sorted nor reversed, groups on named fields without comparators, has
+ * a single predecessor, and every Every pipe following it can be replaced, keeping all incoming fields and the
+ * declared results of its aggregator. Every pipe replaced, other than the last Every, must have no other consumer.
+ */
+class PartialAggregation implements Rewriter
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( PartialAggregation.class );
+
+  private final Recorder recorder;
+  private final int threshold;
+  private final Map<Pipe, GroupBy> replaced = new IdentityHashMap<Pipe, GroupBy>();
+  private final Set<Pipe> absorbed = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+  PartialAggregation( Recorder recorder, Pipe[] tails, int threshold )
+    {
+    this.recorder = recorder;
+    this.threshold = threshold;
+
+    Map<Pipe, Integer> successors = AssemblyOptimizer.countSuccessors( tails );
+    Set<Pipe> grouped = Collections.newSetFromMap( new IdentityHashMap<Pipe, Boolean>() );
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      if( pipe.getClass() == Every.class )
+        grouped.add( pipe.getPrevious()[ 0 ] );
+      }
+
+    for( Pipe pipe : successors.keySet() )
+      {
+      // only the last Every of a grouping is replaced, any other Every must see the tuples of each group
+      if( !isPartial( pipe ) || grouped.contains( pipe ) || !recorder.isRecorded( pipe ) )
+        continue;
+
+      List<Pipe> chain = getChain( pipe, successors );
+
+      if( chain == null )
+        continue;
+
+      replaced.put( pipe, (GroupBy) chain.get( 0 ) );
+      absorbed.addAll( chain.subList( 0, chain.size() - 1 ) );
+      }
+
+    LOG.debug( "found {} groupings to partially aggregate", replaced.size() );
+    }
+
+  /** Returns the GroupBy and every Every up to and including the given Every, or null if any may not be replaced. */
+  private List<Pipe> getChain( Pipe last, Map<Pipe, Integer> successors )
+    {
+    List<Pipe> chain = new ArrayList<Pipe>();
+
+    chain.add( last );
+
+    Pipe current = last.getPrevious()[ 0 ];
+
+    while( current.getClass() == Every.class )
+      {
+      if( !isPartial( current ) || !isAbsorbable( current, successors ) )
+        return null;
+
+      chain.add( 0, current );
+      current = current.getPrevious()[ 0 ];
+      }
+
+    if( current.getClass() != GroupBy.class || !isAbsorbable( current, successors ) )
+      return null;
+
+    GroupBy groupBy = (GroupBy) current;
+
+    if( groupBy.isSorted() || groupBy.isSortReversed() || groupBy.getPrevious().length != 1 || groupBy.getKeySelectors().size() != 1 )
+      return null;
+
+    // AggregateBy neither reverses the grouping order nor applies grouping comparators to its partial results
+    Fields groupingFields = groupBy.getKeySelectors().values().iterator().next();
+
+    if( !isNamed( groupingFields, groupingFields.size() ) || groupingFields.hasComparators() )
+      return null;
+
+    chain.add( 0, groupBy );
+
+    return chain;
+    }
+
+  private boolean isAbsorbable( Pipe pipe, Map<Pipe, Integer> successors )
+    {
+    return successors.get( pipe ) == 1 && recorder.isRecorded( pipe );
+    }
+
+  private static boolean isPartial( Pipe pipe )
+    {
+    if( pipe.getClass() != Every.class )
+      return false;
+
+    Every every = (Every) pipe;
+
+    if( every.hasPlannerLevel() || !every.isAggregator() || !every.getOutputSelector().isAll() )
+      return false;
+
+    return createPartial( every ) != null;
+    }
+
+  /** Returns the AggregateBy equivalent to the aggregator of the given Every, or null if there is none. */
+  private static AggregateBy createPartial( Every every )
+    {
+    Aggregator aggregator = every.getAggregator();
+    Fields argumentSelector = every.getArgumentSelector();
+    Fields declared = aggregator.getFieldDeclaration();
+    Class<? extends Aggregator> type = aggregator.getClass();
+
+    if( type == Count.class && isNamed( declared, 1 ) )
+      return new CountBy( declared );
+
+    if( !isNamed( argumentSelector, type == First.class ? argumentSelector.size() : 1 ) )
+      return null;
+
+    if( type == Average.class && isNamed( declared, 1 ) )
+      return new AverageBy( argumentSelector, declared );
+
+    if( type == Sum.class && isNamed( declared, 1 ) )
+      {
+      // Sum sums into the type of its declared field, or into a double if the field has no type
+      Type sumType = declared.hasTypes() ? declared.getType( 0 ) : Double.class;
+
+      return sumType instanceof Class ? new SumBy( argumentSelector, declared, (Class) sumType ) : null;
+      }
+
+    if( type == First.class && declared.isArguments() )
+      {
+      // First has no accessor for the number of tuples it keeps, the read is covered by the optimizer tests
+      Object firstN = Reflection.returnInstanceFieldIfExistsSafe( aggregator, "firstN" );
+
+      return Integer.valueOf( 1 ).equals( firstN ) ? new FirstBy( argumentSelector ) : null;
+      }
+
+    return null;
+    }
+
+  private static boolean isNamed( Fields fields, int size )
+    {
+    if( fields == null || !fields.isDefined() || fields.size() == 0 || fields.size() != size )
+      return false;
+
+    for( int i = 0; i < fields.size(); i++ )
+      {
+      if( !( fields.get( i ) instanceof String ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  @Override
+  public Object rewrite( Object instance, Map<Object, Object> rebuilt )
+    {
+    // absorbed pipes are kept as is, they are no longer referenced once the chain is replaced
+    if( absorbed.contains( instance ) )
+      return instance;
+
+    GroupBy groupBy = replaced.get( instance );
+
+    if( groupBy == null )
+      return null;
+
+    List<AggregateBy> partials = new ArrayList<AggregateBy>();
+    Pipe current = (Pipe) instance;
+
+    while( current != groupBy )
+      {
+      partials.add( 0, createPartial( (Every) current ) );
+      current = current.getPrevious()[ 0 ];
+      }
+
+    Pipe previous = groupBy.getPrevious()[ 0 ];
+    Pipe rebuiltPrevious = rebuilt.containsKey( previous ) ? (Pipe) rebuilt.get( previous ) : previous;
+    Fields groupingFields = groupBy.getKeySelectors().values().iterator().next();
+    AggregateBy[] assemblies = partials.toArray( new AggregateBy[ partials.size() ] );
+    AggregateBy aggregateBy = new AggregateBy( groupBy.getName(), rebuiltPrevious, groupingFields, threshold, assemblies );
+
+    Reflection.setInstanceFieldIfExistsSafe( aggregateBy, "trace", groupBy.getTrace() );
+
+    Class[] types = new Class[]{String.class, Pipe.class, Fields.class, int.class, AggregateBy[].class};
+    Object[] arguments = new Object[]{groupBy.getName(), rebuiltPrevious, groupingFields, threshold, assemblies};
+
+    recorder.record( AggregateBy.class, types, arguments, groupBy.getTrace(), aggregateBy );
+
+    LOG.debug( "partially aggregating {} aggregators in: {}", assemblies.length, groupBy.getName() );
+
+    return aggregateBy;
+    }
+  }
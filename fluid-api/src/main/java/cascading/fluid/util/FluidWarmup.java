@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.util;
+
+import cascading.fluid.Fluid;
+import cascading.fluid.api.assembly.Assembly.AssemblyBuilder;
+import cascading.operation.Aggregator;
+import cascading.operation.AssertionLevel;
+import cascading.operation.Buffer;
+import cascading.operation.Filter;
+import cascading.operation.Function;
+import cascading.operation.GroupAssertion;
+import cascading.operation.ValueAssertion;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
+import cascading.tuple.Fields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static cascading.fluid.Fluid.fields;
+
+/**
+ * Class FluidWarmup calls every entry point of {@link Fluid} once, so that all the classes a typical job submission
+ * needs are loaded.
+ * <p/>
+ * Its main purpose is to be the application run when dumping a Class Data Sharing archive, e.g. on JDK 11 or later:
+ * <p/>
+ * <pre>
+ *   java -Xshare:off -XX:DumpLoadedClassList=fluid.classlist -cp &lt;classpath&gt; cascading.fluid.util.FluidWarmup
+ *   java -Xshare:dump -XX:SharedClassListFile=fluid.classlist -XX:SharedArchiveFile=fluid.jsa -cp &lt;classpath&gt;
+ * </pre>
+ * <p/>
+ * Job submitting JVMs started with {@code -XX:SharedArchiveFile=fluid.jsa} and the same classpath then map the
+ * Cascading, Fluid and javassist classes from the archive instead of loading and verifying them. Proxy classes
+ * defined by javassist at runtime are never archived.
+ */
+public class FluidWarmup
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( FluidWarmup.class );
+
+  public static void main( String[] args )
+    {
+    long start = System.nanoTime();
+
+    Pipe[] tails = warmup();
+
+    LOG.info( "warmed up {} fluid entry points in: {}ms", tails.length, ( System.nanoTime() - start ) / 1000000 );
+    }
+
+  /**
+   * Method warmup builds every operation and sub-assembly type reachable from {@link Fluid} and uses them in a
+   * small assembly.
+   *
+   * @return the assembly tails
+   */
+  public static Pipe[] warmup()
+    {
+    Function function = Fluid.function().Identity().fieldDeclaration( Fields.ALL ).end();
+    Filter filter = Fluid.filter().RegexFilter().patternString( ".*" ).end();
+    Aggregator aggregator = Fluid.aggregator().Count( fields( "count" ) );
+    Buffer buffer = Fluid.buffer().FirstNBuffer().firstN( 1 ).end();
+    ValueAssertion valueAssertion = Fluid.valueAssertion().AssertMatches().patternString( ".*" ).end();
+    GroupAssertion groupAssertion = Fluid.groupAssertion().AssertGroupSizeEquals().size( 1 ).end();
+    AggregateBy aggregateBy = Fluid.aggregateBy().SumBy().valueField( fields( "value" ) ).sumField( fields( "sum", long.class ) ).end();
+
+    // the assembly builder has no group assertion method, the factory alone loads its builder
+    LOG.debug( "built group assertion: {}", groupAssertion );
+
+    AssemblyBuilder.Start assembly = Fluid.assembly();
+
+    assembly.startBranch( "lhs" )
+      .each( Fields.ALL ).function( function ).outgoing( Fields.RESULTS )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).assertionLevel( AssertionLevel.STRICT ).assertion( valueAssertion )
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).aggregator( aggregator ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).buffer( buffer ).outgoing( Fields.RESULTS )
+      .completeGroupBy()
+      .completeBranch();
+
+    assembly.startBranch( "rhs" )
+      .aggregateBy()
+      .groupingFields( fields( "grouping" ) )
+      .assemblies( aggregateBy )
+      .end()
+      .completeBranch();
+
+    Fluid.concurrentAssembly().startBranch( "concurrent" ).completeBranch();
+
+    return assembly.completeAssembly();
+    }
+  }
@@ -20,27 +20,80 @@
 
 package cascading.fluid;
 
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cascading.flow.FlowProcess;
 import cascading.fluid.api.assembly.Assembly.AssemblyBuilder;
+import cascading.fluid.api.assembly.Branch.BranchHelper;
+import cascading.fluid.api.operation.Operation.OperationGenerator;
+import cascading.fluid.api.operation.Operation.OperationHelper;
+import cascading.fluid.builder.LocalMethodLogger;
+import cascading.fluid.builder.MethodFunction;
+import cascading.fluid.builder.OperationMethodHandler;
+import cascading.fluid.builder.ReflectionMethodHandler;
+import cascading.fluid.builder.TemplateRecorder;
+import cascading.fluid.factory.ConcreteHelper;
+import cascading.fluid.factory.Context;
+import cascading.fluid.factory.Factory;
+import cascading.fluid.factory.MethodDescriptor;
+import cascading.fluid.factory.PipeFactory;
+import cascading.fluid.factory.Reflection;
+import cascading.fluid.factory.Template;
+import cascading.fluid.optimizer.FusedFilter;
+import cascading.fluid.optimizer.OptimizerOptions;
+import cascading.operation.Aggregator;
 import cascading.operation.AssertionLevel;
+import cascading.operation.BaseOperation;
 import cascading.operation.Debug;
 import cascading.operation.DebugLevel;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.Function;
 import cascading.operation.Identity;
+import cascading.operation.OperationException;
 import cascading.operation.aggregator.Average;
 import cascading.operation.aggregator.Count;
+import cascading.operation.aggregator.First;
+import cascading.operation.aggregator.Max;
+import cascading.operation.aggregator.Sum;
 import cascading.operation.assertion.AssertMatches;
+import cascading.operation.filter.Limit;
 import cascading.operation.regex.RegexFilter;
+import cascading.operation.regex.RegexSplitter;
 import cascading.operation.text.DateParser;
 import cascading.pipe.Checkpoint;
+import cascading.pipe.CoGroup;
 import cascading.pipe.Each;
 import cascading.pipe.Every;
 import cascading.pipe.GroupBy;
 import cascading.pipe.HashJoin;
 import cascading.pipe.Pipe;
+import cascading.pipe.Splice;
 import cascading.pipe.assembly.AggregateBy;
 import cascading.pipe.assembly.Coerce;
+import cascading.pipe.assembly.Discard;
 import cascading.pipe.assembly.Rename;
+import cascading.pipe.assembly.Retain;
 import cascading.tuple.Fields;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static cascading.fluid.Fluid.fields;
 import static org.junit.Assert.*;
@@ -50,6 +103,8 @@ import static org.junit.Assert.*;
  */
 public class SimpleTest
   {
+  private static final Logger LOG = LoggerFactory.getLogger( SimpleTest.class );
+
   @Test
   public void testAssemblyBuilder()
     {
@@ -245,4 +300,884 @@ public class SimpleTest
     assertNotNull( tails );
     assertEquals( 1, tails.length );
     }
+
+  @Test
+  public void testConcreteHelpers() throws Exception
+    {
+    Class<?> branchHelper = Class.forName( Reflection.getConcreteHelperName( BranchHelper.class ) );
+
+    assertTrue( ConcreteHelper.class.isAssignableFrom( branchHelper ) );
+    assertTrue( BranchHelper.class.isAssignableFrom( branchHelper ) );
+    assertEquals( PipeFactory.class, branchHelper.getSuperclass() );
+    }
+
+  /**
+   * Verifies the concrete helpers of a factory builder create the operation directly, only the methods starting
+   * the operation, or reached along more than one path, are dispatched to the method handler.
+   */
+  @Test
+  public void testConcreteHelpersCreateDirectly() throws Exception
+    {
+    final List<String> dispatched = new ArrayList<String>();
+
+    OperationMethodHandler methodHandler = new OperationMethodHandler()
+    {
+    @Override
+    public Object dispatch( Object self, MethodDescriptor descriptor, Object[] args )
+      {
+      dispatched.add( descriptor.getName() );
+
+      return super.dispatch( self, descriptor, args );
+      }
+    };
+
+    OperationHelper helper = Reflection.create( OperationHelper.class, methodHandler );
+
+    Function identity = OperationGenerator.build( helper, new LocalMethodLogger() )
+      .function().Identity().fieldDeclaration( fields( "value" ) ).end();
+
+    assertTrue( identity instanceof Identity );
+    assertEquals( fields( "value" ), identity.getFieldDeclaration() );
+
+    // Identity( Fields ) also accepts types, so its end block is not shared even by a lean api
+    assertEquals( Arrays.asList( "function", "Identity" ), dispatched );
+    }
+
+  @Test
+  public void testConstructorInvokerCache() throws Exception
+    {
+    Class[] types = {Pipe.class, Fields.class, Filter.class};
+    Reflection.ConstructorInvoker invoker = Reflection.getConstructorInvoker( Each.class, types );
+
+    types[ 2 ] = Function.class; // the cached key must not share the given array
+
+    assertSame( invoker, Reflection.getConstructorInvoker( Each.class, new Class[]{Pipe.class, Fields.class, Filter.class} ) );
+    assertEquals( Each.class.getConstructor( Pipe.class, Fields.class, Filter.class ), invoker.getConstructor() );
+
+    // sub-types of the declared parameters still select the matching overload, each signature cached on its own
+    Reflection.ConstructorInvoker filter = Reflection.getConstructorInvoker( Each.class, new Class[]{Each.class, Fields.class, RegexFilter.class} );
+    Reflection.ConstructorInvoker function = Reflection.getConstructorInvoker( Each.class, new Class[]{Each.class, Fields.class, RegexSplitter.class} );
+
+    assertEquals( Each.class.getConstructor( Pipe.class, Fields.class, Filter.class ), filter.getConstructor() );
+    assertEquals( Each.class.getConstructor( Pipe.class, Fields.class, Function.class ), function.getConstructor() );
+    assertSame( filter, Reflection.getConstructorInvoker( Each.class, new Class[]{Each.class, Fields.class, RegexFilter.class} ) );
+    assertSame( function, Reflection.getConstructorInvoker( Each.class, new Class[]{Each.class, Fields.class, RegexSplitter.class} ) );
+    }
+
+  public static class Failing
+    {
+    public Failing( Throwable throwable ) throws Throwable
+      {
+      throw throwable;
+      }
+    }
+
+  @Test
+  public void testConstructorInvokerFailures() throws Exception
+    {
+    Error error = new AssertionError( "failed" );
+
+    try
+      {
+      Reflection.createWith( Failing.class, new Class[]{Throwable.class}, new Object[]{error} );
+      fail( "no error thrown" );
+      }
+    catch( AssertionError thrown )
+      {
+      assertSame( error, thrown );
+      }
+
+    IllegalStateException exception = new IllegalStateException( "failed" );
+
+    try
+      {
+      Reflection.createWith( Failing.class, new Class[]{IllegalStateException.class}, new Object[]{exception} );
+      fail( "no exception thrown" );
+      }
+    catch( FluidException thrown )
+      {
+      assertSame( exception, thrown.getCause() );
+      }
+    }
+
+  public interface Named
+    {
+    Object name();
+    }
+
+  private static ReflectionMethodHandler named( final Object name )
+    {
+    ReflectionMethodHandler methodHandler = new ReflectionMethodHandler();
+
+    methodHandler.addMethod( "name", new MethodFunction()
+    {
+    @Override
+    public Object apply( Object self, Object[] arguments )
+      {
+      return name;
+      }
+    } );
+
+    return methodHandler;
+    }
+
+  @Test
+  public void testProxyClassReuse()
+    {
+    Named lhs = Reflection.create( Named.class, named( "lhs" ) );
+    Named rhs = Reflection.create( Named.class, named( "rhs" ) );
+
+    assertNotSame( lhs, rhs );
+    assertSame( lhs.getClass(), rhs.getClass() );
+
+    // the class is shared, each instance still dispatches to its own handler
+    assertEquals( "lhs", lhs.name() );
+    assertEquals( "rhs", rhs.name() );
+    }
+
+  @Test
+  public void testMethodDescriptorCache()
+    {
+    final List<MethodDescriptor> descriptors = new ArrayList<MethodDescriptor>();
+
+    for( int i = 0; i < 2; i++ )
+      {
+      ReflectionMethodHandler methodHandler = new ReflectionMethodHandler()
+      {
+      @Override
+      public Object dispatch( Object self, MethodDescriptor descriptor, Object[] args )
+        {
+        descriptors.add( descriptor );
+
+        return super.dispatch( self, descriptor, args );
+        }
+      };
+
+      methodHandler.addMethod( "name", new MethodFunction()
+      {
+      @Override
+      public Object apply( Object self, Object[] arguments )
+        {
+        return "name";
+        }
+      } );
+
+      Named named = Reflection.create( Named.class, methodHandler );
+
+      named.name();
+      named.name();
+      }
+
+    assertEquals( 4, descriptors.size() );
+    assertEquals( "name", descriptors.get( 0 ).getName() );
+
+    // one descriptor per Method, shared by every call and every handler
+    for( MethodDescriptor descriptor : descriptors )
+      assertSame( descriptors.get( 0 ), descriptor );
+    }
+
+  public static class ArgumentsFactory extends Factory
+    {
+    public List<Object> arguments()
+      {
+      return Arrays.asList( getArguments() );
+      }
+    }
+
+  @Test
+  public void testArgumentFrameFork()
+    {
+    ArgumentsFactory prefix = new ArgumentsFactory();
+
+    prefix.addArguments( new Object[]{"a", "b"} );
+
+    ArgumentsFactory lhs = new ArgumentsFactory();
+    ArgumentsFactory rhs = new ArgumentsFactory();
+
+    lhs.addPrior( prefix );
+    rhs.addPrior( prefix );
+
+    lhs.addArguments( new Object[]{"lhs"} ); // appends in place
+    rhs.addArguments( new Object[]{"rhs", "rhs"} ); // must fork, lhs already appended past the prefix
+
+    ArgumentsFactory next = new ArgumentsFactory();
+
+    next.addPrior( lhs );
+    next.addArguments( new Object[]{"next"} );
+    rhs.addArguments( new Object[]{"rhs"} );
+
+    assertEquals( Arrays.<Object>asList( "a", "b" ), prefix.arguments() );
+    assertEquals( Arrays.<Object>asList( "a", "b", "lhs" ), lhs.arguments() );
+    assertEquals( Arrays.<Object>asList( "a", "b", "rhs", "rhs", "rhs" ), rhs.arguments() );
+    assertEquals( Arrays.<Object>asList( "a", "b", "lhs", "next" ), next.arguments() );
+    }
+
+  @Test
+  public void testConcurrentAssemblyBuilder() throws Exception
+    {
+    final AssemblyBuilder.Start builder = Fluid.concurrentAssembly();
+
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    List<Future<Pipe>> futures = new ArrayList<Future<Pipe>>();
+
+    for( int i = 0; i < 16; i++ )
+      {
+      final String name = String.format( "branch%02d", i );
+
+      futures.add( executor.submit( new Callable<Pipe>()
+      {
+      @Override
+      public Pipe call() throws Exception
+        {
+        return builder.startBranch( name )
+          .each( Fields.ALL ).filter( new RegexFilter( "" ) )
+          .checkpoint()
+          .groupBy( Fields.ALL ).completeGroupBy()
+          .completeBranch();
+        }
+      } ) );
+      }
+
+    for( Future<Pipe> future : futures )
+      assertTrue( future.get() instanceof GroupBy );
+
+    executor.shutdown();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 16, tails.length );
+
+    // tails come in the order their branches were started, which here depends on the threads
+    Set<String> names = new HashSet<String>();
+
+    for( Pipe tail : tails )
+      names.add( tail.getName() );
+
+    for( int i = 0; i < tails.length; i++ )
+      assertTrue( names.contains( String.format( "branch%02d", i ) ) );
+    }
+
+  @Test
+  public void testConcurrentBranchTailsOrder()
+    {
+    List<List<Pipe>> orders = new ArrayList<List<Pipe>>();
+
+    for( Context context : new Context[]{new Context(), Context.concurrent()} )
+      {
+      Pipe lhs = new Pipe( "lhs" );
+      Pipe rhs = new Pipe( "rhs" );
+      Pipe unnamed = new Pipe( "unnamed" );
+
+      context.branchTails.put( "zeta", lhs );
+      context.branchTails.put( null, unnamed );
+      context.branchTails.put( "alpha", rhs );
+      context.branchTails.put( "zeta", new Each( lhs, new Identity() ) ); // keeps its position
+      context.branchTails.remove( "alpha" );
+      context.branchTails.put( "alpha", new Each( rhs, new Identity() ) ); // moves to the end
+
+      assertEquals( 3, context.branchTails.size() );
+      assertSame( unnamed, context.branchTails.get( null ) );
+
+      List<Pipe> tails = new ArrayList<Pipe>( context.branchTails.values() );
+
+      assertEquals( "lhs", tails.get( 0 ).getName() );
+      assertSame( unnamed, tails.get( 1 ) );
+      assertEquals( "rhs", tails.get( 2 ).getName() );
+
+      orders.add( tails );
+      }
+
+    assertEquals( orders.get( 0 ).size(), orders.get( 1 ).size() );
+
+    for( int i = 0; i < orders.get( 0 ).size(); i++ )
+      assertEquals( orders.get( 0 ).get( i ).getName(), orders.get( 1 ).get( i ).getName() );
+    }
+
+  @Test
+  public void testTemplateReplay()
+    {
+    TemplateRecorder recorder = Fluid.template();
+
+    recorder.assembly().startBranch( "rhs" )
+      .each( Fields.ALL ).filter( new RegexFilter( "" ) )
+      .groupBy( fields( "grouping" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Template<Pipe> template = recorder.completeTemplate();
+
+    Pipe[] first = template.replay();
+    Pipe[] second = template.replay( Collections.singletonMap( "rhs", "tenant" ) );
+
+    assertEquals( 1, first.length );
+    assertEquals( 1, second.length );
+    assertTrue( first[ 0 ] instanceof Every );
+    assertTrue( second[ 0 ] instanceof Every );
+    assertNotSame( first[ 0 ], second[ 0 ] );
+    assertEquals( "rhs", first[ 0 ].getName() );
+    assertEquals( "tenant", second[ 0 ].getName() );
+    assertEquals( fields( "grouping" ), ( (GroupBy) second[ 0 ].getPrevious()[ 0 ] ).getKeySelectors().get( "tenant" ) );
+    }
+
+  @Test
+  public void testSessionAssemblyBuilder()
+    {
+    FluidSession session = new FluidSession();
+
+    for( int i = 0; i < 3; i++ )
+      {
+      Pipe pipe = session.assembly().startBranch( "branch" + i )
+        .each( Fields.ALL ).function( session.function().Identity().fieldDeclaration( Fields.ALL ).end() ).outgoing( Fields.RESULTS )
+        .completeBranch();
+
+      assertTrue( pipe instanceof Each );
+      assertTrue( ( (Each) pipe ).getFunction() instanceof Identity );
+      }
+
+    AssemblyBuilder.Start builder = session.assembly();
+
+    builder.startBranch( "lhs" ).completeBranch();
+    builder.startBranch( "rhs" ).completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 2, tails.length );
+    assertEquals( "lhs", tails[ 0 ].getName() );
+    assertEquals( "rhs", tails[ 1 ].getName() );
+    }
+
+  @Test
+  public void testEachFusion()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setFuseEach( true ) );
+
+    Pipe tail = builder.startBranch( "branch" )
+      .each( fields( "line" ) ).filter( new RegexFilter( "a" ) )
+      .each( Fields.ALL ).filter( new RegexFilter( "b" ) )
+      .each( fields( "line" ) ).filter( new RegexFilter( "c" ) )
+      .each( Fields.ALL ).function( new Identity() ).outgoing( Fields.RESULTS )
+      .each( Fields.ALL ).filter( new RegexFilter( "d" ) )
+      .completeBranch();
+
+    Pipe first = tail.getPrevious()[ 0 ].getPrevious()[ 0 ].getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+    assertNotSame( tail, tails[ 0 ] );
+    assertTrue( ( (Each) tails[ 0 ] ).getFilter() instanceof RegexFilter );
+
+    Each function = (Each) tails[ 0 ].getPrevious()[ 0 ];
+
+    assertTrue( function.getFunction() instanceof Identity );
+    assertEquals( Fields.RESULTS, function.getOutputSelector() );
+
+    Each fused = (Each) function.getPrevious()[ 0 ];
+
+    assertTrue( fused.getFilter() instanceof FusedFilter );
+    assertEquals( 3, ( (FusedFilter) fused.getFilter() ).getFilters().length );
+    assertEquals( fields( "line" ), ( (FusedFilter) fused.getFilter() ).getArgumentSelectors()[ 0 ] );
+    assertEquals( first.getTrace(), fused.getTrace() );
+    assertEquals( first.getTrace(), ( (FusedFilter) fused.getFilter() ).getTraces()[ 0 ] );
+    assertEquals( tail.getPrevious()[ 0 ].getPrevious()[ 0 ].getTrace(), ( (FusedFilter) fused.getFilter() ).getTraces()[ 2 ] );
+    assertSame( first.getPrevious()[ 0 ], fused.getPrevious()[ 0 ] );
+    }
+
+  /** Filter expecting two arguments. */
+  private static class PairFilter extends BaseOperation implements Filter
+    {
+    PairFilter()
+      {
+      super( 2 );
+      }
+
+    @Override
+    public boolean isRemove( FlowProcess flowProcess, FilterCall filterCall )
+      {
+      return false;
+      }
+    }
+
+  @Test
+  public void testEachFusionVerifiesNumArgs()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setFuseEach( true ) );
+
+    Pipe tail = builder.startBranch( "branch" )
+      .each( fields( "line" ) ).filter( new RegexFilter( "a" ) )
+      .each( fields( "line" ) ).filter( new PairFilter() )
+      .completeBranch();
+
+    try
+      {
+      builder.completeAssembly();
+      fail( "did not verify the number of arguments" );
+      }
+    catch( OperationException exception )
+      {
+      assertTrue( exception.getMessage().contains( tail.getTrace() ) );
+      }
+    }
+
+  @Test
+  public void testOptimizeKeepsExternalPipes()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setFuseEach( true ).setPushDownFilters( true ).setEarlyProjection( true ) );
+
+    Pipe external = new Each( new Pipe( "external" ), fields( "line" ), new RegexFilter( "a" ) );
+    Pipe upstream = new Each( new Pipe( "upstream" ), fields( "line" ), new RegexFilter( "b" ) );
+
+    builder.continueBranch( external ).completeBranch();
+
+    builder.continueBranch( upstream )
+      .each( fields( "line" ) ).filter( new RegexFilter( "c" ) )
+      .each( fields( "line" ) ).filter( new RegexFilter( "d" ) )
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 2, tails.length );
+    assertSame( external, tails[ 0 ] );
+    assertTrue( ( (Each) tails[ 1 ] ).getFilter() instanceof FusedFilter );
+    assertEquals( 2, ( (FusedFilter) ( (Each) tails[ 1 ] ).getFilter() ).getFilters().length );
+    assertSame( upstream, tails[ 1 ].getPrevious()[ 0 ] );
+    }
+
+  @Test
+  public void testFilterPushDown()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setPushDownFilters( true ) );
+    RegexFilter lhs = new RegexFilter( "a" );
+    RegexFilter rhs = new RegexFilter( "b" );
+
+    Pipe tail = builder.startBranch( "branch" )
+      .rename( fields( "line" ), fields( "text" ) )
+      .each( fields( "text" ) ).filter( lhs )
+      .groupBy( fields( "text" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .each( fields( "text" ) ).filter( rhs )
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+    assertTrue( tails[ 0 ] instanceof Every );
+    assertTrue( tails[ 0 ].getPrevious()[ 0 ] instanceof GroupBy );
+
+    Pipe rename = tails[ 0 ].getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    assertTrue( rename instanceof Rename );
+
+    Each second = (Each) rename.getPrevious()[ 0 ];
+    Each first = (Each) second.getPrevious()[ 0 ];
+
+    assertEquals( fields( "line" ), first.getArgumentSelector() );
+    assertSame( lhs, first.getFilter() );
+    assertEquals( fields( "line" ), second.getArgumentSelector() );
+    assertSame( rhs, second.getFilter() );
+    assertEquals( tail.getTrace(), second.getTrace() );
+    assertEquals( Pipe.class, first.getPrevious()[ 0 ].getClass() );
+    }
+
+  @Test
+  public void testFilterPushDownKeepsOrderedFilters()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setPushDownFilters( true ) );
+    Limit limit = new Limit( 10 );
+
+    builder.startBranch( "branch" )
+      .groupBy( fields( "text" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .each( fields( "text" ) ).filter( limit )
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+    assertTrue( tails[ 0 ] instanceof Each );
+    assertSame( limit, ( (Each) tails[ 0 ] ).getFilter() );
+    assertTrue( tails[ 0 ].getPrevious()[ 0 ] instanceof Every );
+    }
+
+  @Test
+  public void testPartialAggregation()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setPartialAggregation( true ).setAggregateByThreshold( 1000 ) );
+
+    builder.startBranch( "lhs" )
+      .groupBy( fields( "ip" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .every( fields( "size" ) ).aggregator( new Sum( fields( "total" ), long.class ) ).outgoing( Fields.ALL )
+      .every( fields( "size" ) ).aggregator( new Average( fields( "average" ) ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "rhs" )
+      .groupBy( fields( "ip" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .every( fields( "size" ) ).aggregator( new Max( fields( "max" ) ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 2, tails.length );
+    assertTrue( tails[ 0 ] instanceof AggregateBy );
+    assertEquals( "lhs", tails[ 0 ].getName() );
+    assertEquals( Pipe.class, tails[ 0 ].getPrevious()[ 0 ].getClass() );
+    assertTrue( tails[ 1 ] instanceof Every );
+    assertTrue( tails[ 1 ].getPrevious()[ 0 ].getPrevious()[ 0 ] instanceof GroupBy );
+    }
+
+  /**
+   * Verifies every Sum and First flavour is partially aggregated only when it can be, so a change to how either
+   * declares its type or number of tuples fails here instead of silently disabling the optimization.
+   */
+  @Test
+  public void testPartialAggregationFlavours()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setPartialAggregation( true ) );
+
+    builder.startBranch( "sum" )
+      .groupBy( fields( "ip" ) )
+      .every( fields( "size" ) ).aggregator( new Sum() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "typedSum" )
+      .groupBy( fields( "ip" ) )
+      .every( fields( "size" ) ).aggregator( new Sum( fields( "total", long.class ) ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "first" )
+      .groupBy( fields( "ip" ) )
+      .every( fields( "time" ) ).aggregator( new First() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "firstN" )
+      .groupBy( fields( "ip" ) )
+      .every( fields( "time" ) ).aggregator( new First( 2 ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 4, tails.length );
+    assertTrue( tails[ 0 ] instanceof AggregateBy );
+    assertTrue( tails[ 1 ] instanceof AggregateBy );
+    assertTrue( tails[ 2 ] instanceof AggregateBy );
+    assertTrue( tails[ 3 ] instanceof Every ); // FirstBy only keeps the first tuple
+    }
+
+  @Test
+  public void testPartialAggregationKeepsUnnamedGroupings()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setPartialAggregation( true ) );
+
+    builder.startBranch( "branch" )
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+    assertTrue( tails[ 0 ] instanceof Every );
+    assertTrue( tails[ 0 ].getPrevious()[ 0 ] instanceof GroupBy );
+    }
+
+  @Test
+  public void testEarlyProjection()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setEarlyProjection( true ) );
+
+    builder.startBranch( "logs" )
+      .each( fields( "line" ) ).function( new RegexSplitter( fields( "ip", "time", "method", "size" ) ) ).outgoing( Fields.ALL )
+      .groupBy( fields( "ip" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .every( fields( "size" ) ).aggregator( new Sum( fields( "total" ), long.class ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+
+    Pipe groupBy = tails[ 0 ].getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    assertTrue( groupBy instanceof GroupBy );
+    assertTrue( groupBy.getPrevious()[ 0 ] instanceof Retain );
+
+    Pipe each = groupBy.getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    assertTrue( each instanceof Each );
+    assertTrue( each.getPrevious()[ 0 ] instanceof Retain );
+    assertEquals( Pipe.class, each.getPrevious()[ 0 ].getPrevious()[ 0 ].getClass() );
+    assertEquals( "logs", each.getPrevious()[ 0 ].getName() );
+    }
+
+  @Test
+  public void testEarlyProjectionWithoutGrouping()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setEarlyProjection( true ) );
+
+    builder.startBranch( "logs" )
+      .each( fields( "line" ) ).function( new RegexSplitter( fields( "ip", "time", "method", "size" ) ) ).outgoing( Fields.ALL )
+      .each( fields( "ip" ) ).filter( new RegexFilter( "^10\\." ) )
+      .each( fields( "ip", "size" ) ).function( new Identity( fields( "address", "bytes" ) ) ).outgoing( Fields.RESULTS )
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 1, tails.length );
+
+    // the tail only declares its results, so only the split line is read from the head
+    Pipe split = tails[ 0 ].getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    assertTrue( split instanceof Each );
+    assertTrue( split.getPrevious()[ 0 ] instanceof Retain );
+    assertEquals( Pipe.class, split.getPrevious()[ 0 ].getPrevious()[ 0 ].getClass() );
+    }
+
+  @Test
+  public void testEarlyProjectionKeepsSelectedFields()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setEarlyProjection( true ) );
+
+    builder.startBranch( "retain" )
+      .retain( fields( "a", "b" ) )
+      .groupBy( fields( "a" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "rename" )
+      .rename( fields( "x" ), fields( "y" ) )
+      .groupBy( fields( "a" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "discard" )
+      .discard( fields( "d" ) )
+      .groupBy( fields( "a" ) )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 3, tails.length );
+    assertEquals( fields( "a", "b" ), getHeadProjection( tails[ 0 ], Retain.class ) );
+    assertEquals( fields( "x", "a" ), getHeadProjection( tails[ 1 ], Rename.class ) );
+    assertEquals( fields( "d", "a" ), getHeadProjection( tails[ 2 ], Discard.class ) );
+    }
+
+  /** Returns the fields retained after the head, ahead of the given assembly type preceding the GroupBy projection. */
+  private static Fields getHeadProjection( Pipe tail, Class<? extends Pipe> type )
+    {
+    Pipe groupBy = tail.getPrevious()[ 0 ];
+
+    assertTrue( groupBy instanceof GroupBy );
+    assertTrue( groupBy.getPrevious()[ 0 ] instanceof Retain );
+
+    Pipe assembly = groupBy.getPrevious()[ 0 ].getPrevious()[ 0 ];
+
+    assertEquals( type, assembly.getClass() );
+
+    Pipe projection = assembly.getPrevious()[ 0 ];
+
+    assertTrue( projection instanceof Retain );
+    assertEquals( Pipe.class, projection.getPrevious()[ 0 ].getClass() );
+
+    return ( (Each) ( (Retain) projection ).getTails()[ 0 ] ).getArgumentSelector();
+    }
+
+  @Test
+  public void testJoinSelection()
+    {
+    AssemblyBuilder.Start builder = Fluid.assembly( new OptimizerOptions().setJoinMemoryBudget( 1024 * 1024 ) );
+
+    Pipe large = builder.startBranch( "large" ).estimatedSize( 1024L * 1024 * 1024 ).completeBranch();
+    Pipe small = builder.startBranch( "small" ).estimatedSize( 1024 ).completeBranch();
+
+    Splice join = builder.startJoin()
+      .lhs( large ).lhsGroupFields( fields( "num" ) )
+      .rhs( small ).rhsGroupFields( fields( "num" ) )
+      .declaredFields( fields( "num1", "char1", "num2", "char2" ) )
+      .createJoin();
+
+    CoGroup coGroup = builder.startCoGroup()
+      .lhs( large ).lhsGroupFields( fields( "num" ) )
+      .rhs( small ).rhsGroupFields( fields( "num" ) )
+      .declaredFields( fields( "num1", "char1", "num2", "char2" ) )
+      .createCoGroup();
+
+    HashJoin hashJoin = builder.startHashJoin()
+      .lhs( small ).lhsJoinFields( fields( "num" ) )
+      .rhs( large ).rhsJoinFields( fields( "num" ) )
+      .declaredFields( fields( "num1", "char1", "num2", "char2" ) )
+      .createHashJoin();
+
+    Splice kept = builder.startJoin()
+      .lhs( small ).lhsGroupFields( fields( "num" ) )
+      .rhs( large ).rhsGroupFields( fields( "num" ) )
+      .declaredFields( fields( "num1", "char1", "num2", "char2" ) )
+      .createJoin();
+
+    builder.continueBranch( "selected", join ).completeBranch();
+    builder.continueBranch( "lhs", coGroup ).completeBranch();
+    builder.continueBranch( "rhs", hashJoin ).completeBranch();
+    builder.continueBranch( "kept", kept ).completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    assertEquals( 4, tails.length );
+    assertEquals( "selected", tails[ 0 ].getName() );
+    assertEquals( HashJoin.class, tails[ 0 ].getPrevious()[ 0 ].getClass() );
+    assertEquals( join.getTrace(), tails[ 0 ].getPrevious()[ 0 ].getTrace() );
+    assertTrue( tails[ 0 ].getPrevious()[ 0 ].hasConfigDef() );
+    assertEquals( "lhs", tails[ 1 ].getName() );
+    assertSame( coGroup, tails[ 1 ].getPrevious()[ 0 ] );
+    assertEquals( "rhs", tails[ 2 ].getName() );
+    assertSame( hashJoin, tails[ 2 ].getPrevious()[ 0 ] );
+    assertEquals( "kept", tails[ 3 ].getName() );
+    assertSame( kept, tails[ 3 ].getPrevious()[ 0 ] );
+    assertFalse( kept.hasConfigDef() ); // a join kept as built is not modified
+    }
+
+  /**
+   * Verifies an api generated with {@code -Dfluid.api.lean=true} shares a single outgoing block between operations,
+   * and a single end block per operation type, and logs the loaded class count and metaspace used by building a canonical assembly.
+   */
+  @Test
+  public void testAssemblyFootprint()
+    {
+    ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+
+    int priorClasses = classLoading.getLoadedClassCount();
+    long priorMetaspace = getMetaspaceUsed();
+
+    AssemblyBuilder.Start builder = Fluid.assembly();
+
+    builder.startBranch( "lhs" )
+      .each( Fields.ALL ).function( new Identity() ).outgoing( Fields.RESULTS )
+      .each( Fields.ALL ).filter( new RegexFilter( "" ) )
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .every( Fields.ALL ).aggregator( new Average( fields( "average" ) ) ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+
+    builder.startBranch( "rhs" )
+      .each( Fields.ALL ).function( new Identity() ).outgoing( Fields.RESULTS )
+      .completeBranch();
+
+    Pipe[] tails = builder.completeAssembly();
+
+    int classes = classLoading.getLoadedClassCount();
+    long metaspace = getMetaspaceUsed();
+
+    LOG.info( "canonical assembly, loaded classes: {} (+{}), metaspace: {} bytes (+{})", classes, classes - priorClasses, metaspace, metaspace - priorMetaspace );
+
+    assertEquals( 2, tails.length );
+
+    Class<?> function = getReturnType( Fluid.assembly().startBranch( "lhs" ).each( Fields.ALL ), "function", Function.class );
+    Class<?> aggregator = getReturnType( Fluid.assembly().startBranch( "lhs" ).groupBy( Fields.ALL ).every( Fields.ALL ), "aggregator", Aggregator.class );
+
+    assertEquals( Boolean.getBoolean( "fluid.api.lean" ), function == aggregator );
+
+    Map<Class<?>, Integer> endBlocks = countEndBlocks( cascading.fluid.api.operation.Function.FunctionBuilder.class );
+    int total = 0;
+    int max = 0;
+
+    for( int count : endBlocks.values() )
+      {
+      total += count;
+      max = Math.max( max, count );
+      }
+
+    LOG.info( "function api, end blocks: {}, for types: {}", total, endBlocks.size() );
+
+    // a lean api generates one block holding only end() per type, instead of one per last constructor parameter
+    if( Boolean.getBoolean( "fluid.api.lean" ) )
+      assertEquals( endBlocks.size(), total );
+    else
+      assertTrue( max > 1 );
+    }
+
+  /** Counts, by the type returned, the generated interfaces reachable from the given builder only declaring end(). */
+  private static Map<Class<?>, Integer> countEndBlocks( Class<?> builder )
+    {
+    Map<Class<?>, Integer> counts = new HashMap<Class<?>, Integer>();
+    Set<Class<?>> seen = new HashSet<Class<?>>();
+    LinkedList<Class<?>> queue = new LinkedList<Class<?>>();
+
+    queue.add( builder );
+
+    while( !queue.isEmpty() )
+      {
+      Class<?> type = queue.removeFirst();
+
+      if( !seen.add( type ) )
+        continue;
+
+      Method[] methods = type.getMethods();
+
+      if( methods.length == 1 && methods[ 0 ].getName().equals( "end" ) )
+        {
+        Integer count = counts.get( methods[ 0 ].getReturnType() );
+
+        counts.put( methods[ 0 ].getReturnType(), count == null ? 1 : count + 1 );
+        }
+
+      for( Method method : methods )
+        {
+        Class<?> returnType = method.getReturnType();
+
+        if( returnType.isInterface() && returnType.getName().startsWith( "cascading.fluid.api." ) )
+          queue.add( returnType );
+        }
+      }
+
+    return counts;
+    }
+
+  private static Class<?> getReturnType( Object block, String name, Class<?> parameterType )
+    {
+    for( Class<?> type : block.getClass().getInterfaces() )
+      {
+      try
+        {
+        return type.getMethod( name, parameterType ).getReturnType();
+        }
+      catch( NoSuchMethodException exception )
+        {
+        // declared by another interface
+        }
+      }
+
+    fail( "no method found: " + name );
+
+    return null;
+    }
+
+  private static long getMetaspaceUsed()
+    {
+    long used = 0;
+
+    for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+      {
+      if( pool.getName().contains( "Metaspace" ) || pool.getName().contains( "Perm Gen" ) )
+        used += pool.getUsage().getUsed();
+      }
+
+    return used;
+    }
   }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import cascading.fluid.Fluid;
+import cascading.operation.Identity;
+import cascading.operation.aggregator.Count;
+import cascading.operation.regex.RegexFilter;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Fluid#assembly()} branch chains of increasing length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AssemblyBenchmark
+  {
+  private final RegexFilter filter = new RegexFilter( "" );
+  private final Identity identity = new Identity();
+
+  @Benchmark
+  public Pipe[] assemblyOnly()
+    {
+    return Fluid.assembly().completeAssembly();
+    }
+
+  @Benchmark
+  public Pipe chainLength1()
+    {
+    return Fluid.assembly().startBranch( "branch" )
+      .each( Fields.ALL ).filter( filter )
+      .completeBranch();
+    }
+
+  @Benchmark
+  public Pipe chainLength4()
+    {
+    return Fluid.assembly().startBranch( "branch" )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .completeBranch();
+    }
+
+  @Benchmark
+  public Pipe chainLength16()
+    {
+    return Fluid.assembly().startBranch( "branch" )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .pipe( "renamed" )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .checkpoint()
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .groupBy( Fields.ALL )
+      .every( Fields.ALL ).aggregator( new Count() ).outgoing( Fields.ALL )
+      .completeGroupBy()
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .each( Fields.ALL ).filter( filter )
+      .each( Fields.ALL ).function( identity ).outgoing( Fields.RESULTS )
+      .completeBranch();
+    }
+  }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import cascading.fluid.Fluid;
+import cascading.operation.Function;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static cascading.fluid.Fluid.fields;
+
+/**
+ * Measures the operation and sub-assembly factory builders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OperationBenchmark
+  {
+  private final Fields declared = fields( "lhs", "rhs" );
+
+  @Benchmark
+  public Function regexSplitter()
+    {
+    return Fluid.function().RegexSplitter().fieldDeclaration( declared ).patternString( "\t" ).end();
+    }
+
+  @Benchmark
+  public Function identity()
+    {
+    return Fluid.function().Identity().fieldDeclaration( Fields.ALL ).end();
+    }
+
+  @Benchmark
+  public Pipe aggregateBy()
+    {
+    return Fluid.assembly().startBranch( "branch" )
+      .aggregateBy()
+      .groupingFields( fields( "grouping" ) )
+      .assemblies
+        (
+          Fluid.aggregateBy().AverageBy().valueField( fields( "value" ) ).averageField( fields( "average" ) ).end(),
+          Fluid.aggregateBy().SumBy().valueField( fields( "value" ) ).sumField( fields( "sum", long.class ) ).end()
+        )
+      .end()
+      .completeBranch();
+    }
+  }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import cascading.fluid.api.assembly.Branch.BranchHelper;
+import cascading.fluid.builder.AssemblyMethodHandler;
+import cascading.fluid.factory.PipeFactory;
+import cascading.fluid.factory.Reflection;
+import cascading.operation.Identity;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the raw {@link Reflection#create} and {@link Reflection#createWith} hot paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReflectionBenchmark
+  {
+  private final AssemblyMethodHandler methodHandler = new AssemblyMethodHandler();
+  private final Pipe head = new Pipe( "head" );
+  private final Class[] eachTypes = new Class[]{Pipe.class, Fields.class, Identity.class, Fields.class};
+  private final Object[] eachArguments = new Object[]{head, Fields.ALL, new Identity(), Fields.RESULTS};
+
+  @Benchmark
+  public BranchHelper createHelper()
+    {
+    return Reflection.create( BranchHelper.class, methodHandler, PipeFactory.class );
+    }
+
+  @Benchmark
+  public Pipe createWithPipe()
+    {
+    return Reflection.createWith( Pipe.class, new Class[]{String.class}, new Object[]{"branch"} );
+    }
+
+  @Benchmark
+  public Each createWithEach()
+    {
+    return Reflection.createWith( Each.class, eachTypes, eachArguments );
+    }
+  }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import cascading.fluid.util.FluidWarmup;
+import cascading.pipe.Pipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to the first complete assembly in a fresh JVM, with and without the class data sharing
+ * archive dumped by the {@code cdsCascadingXX} tasks.
+ * <p/>
+ * Each fork measures a single cold call, so class loading dominates. Run via the {@code startupCascadingXX} tasks,
+ * they start the forks in the directory holding {@code fluid.jsa}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark
+  {
+  @Benchmark
+  @Fork(10)
+  public Pipe[] coldStart()
+    {
+    return FluidWarmup.warmup();
+    }
+
+  @Benchmark
+  @Fork(value = 10, jvmArgsAppend = {"-Xshare:auto", "-XX:SharedArchiveFile=fluid.jsa"})
+  public Pipe[] coldStartShared()
+    {
+    return FluidWarmup.warmup();
+    }
+  }
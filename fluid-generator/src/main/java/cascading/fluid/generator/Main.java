@@ -21,33 +21,233 @@
 package cascading.fluid.generator;
 
 import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import cascading.fluid.generator.builder.AssemblyGenerator;
+import cascading.fluid.generator.builder.Generator;
 import cascading.fluid.generator.builder.OperationsGenerator;
 import cascading.fluid.generator.builder.SubAssembliesGenerator;
+import cascading.fluid.generator.util.ChildFirstURLClassLoader;
 import cascading.fluid.generator.util.ClassLoaderRunner;
+import cascading.fluid.generator.util.Diagnostics;
+import cascading.fluid.generator.util.Fingerprint;
+import cascading.fluid.generator.util.TypeIndex;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Class Main generates the Fluid api into the given output path.
+ * <p/>
+ * A {@link Fingerprint} of the generator and its input classpath is kept in the output path, generation is skipped
+ * if neither changed since the last run, and only descriptors whose input types changed are regenerated.
+ * <p/>
+ * Stale descriptors are generated concurrently from a single shared {@link TypeIndex}, optionally by a bounded
+ * number of threads. Several output paths, each with its own Cascading classpath, may be generated by a single
+ * process.
+ * <p/>
+ * Given a list of packages and a target package, only the operations and sub-assemblies found in those packages
+ * are generated, so an api can be created for a library of operations without re-generating all of Cascading.
  */
 public class Main
   {
   private static final Logger LOG = LoggerFactory.getLogger( Main.class );
 
+  /** Field DESCRIPTORS holds the package of every generated descriptor, each is generated independently */
+  public static final List<String> DESCRIPTORS = Arrays.asList( AssemblyGenerator.PACKAGE_NAME, OperationsGenerator.PACKAGE_NAME, SubAssembliesGenerator.PACKAGE_NAME );
+  /** Field LIBRARY_DESCRIPTORS holds the descriptors generated for a library of operations outside of Cascading */
+  public static final List<String> LIBRARY_DESCRIPTORS = Arrays.asList( OperationsGenerator.PACKAGE_NAME, SubAssembliesGenerator.PACKAGE_NAME );
+
+  public static final String DESCRIPTORS_OPTION = "--descriptors";
+  public static final String PACKAGES_OPTION = "--packages";
+  public static final String TARGET_PACKAGE_OPTION = "--target-package";
+  public static final String LEAN_OPTION = "--lean";
+  public static final String DIAGNOSTICS_OPTION = "--diagnostics";
+  public static final String DIAGNOSTICS_DOT_OPTION = "--diagnostics-dot";
+  public static final String THREADS_OPTION = "--threads";
+
   private String outputPath;
+  private Set<String> descriptors;
+  private String[] packages;
+  private String targetPackage;
+  private boolean lean;
+  private File diagnosticsDir;
+  private boolean diagnosticsDOT;
+  private int threads; // unbounded if zero
 
+  /**
+   * Usage: {@code Main <outputPath> [<classpath> [<outputPath> <classpath> ...]] [--packages <package,...> --target-package <package>]
+   * [--lean true] [--diagnostics <dir> [--diagnostics-dot true]] [--threads <count>]}
+   * <p/>
+   * If packages are given, only those packages are scanned and only their operations and sub-assemblies are
+   * generated, into descriptor packages below the given target package. A lean api shares identical blocks
+   * instead of repeating them, see {@link Generator#setEnableLeanApi(boolean)}.
+   * <p/>
+   * If a diagnostics directory is given, all descriptors are regenerated and a single {@link Diagnostics} report,
+   * optionally with a bundle of all parameter graphs in DOT format, is written into it.
+   * <p/>
+   * Every descriptor model is built whole before it is written, {@code --threads} only limits how many descriptors
+   * are generated concurrently, the largest descriptor still grows with the number of operation types.
+   * <p/>
+   * Given more than one output path and classpath pair, every pair is generated concurrently within this process,
+   * each within its own {@link ChildFirstURLClassLoader}, so several Cascading versions share one warm generator.
+   */
   public static void main( String[] args )
     {
-    String targetPath = args[ 0 ];
+    List<String> positional = new ArrayList<String>();
+    Map<String, String> options = parseOptions( args, positional );
+
+    if( positional.isEmpty() || positional.size() > 2 && positional.size() % 2 != 0 )
+      throw new IllegalArgumentException( "usage: Main <outputPath> [<classpath> [<outputPath> <classpath> ...]] [" + PACKAGES_OPTION + " <package,...> " + TARGET_PACKAGE_OPTION + " <package>] [" + LEAN_OPTION + " true] [" + DIAGNOSTICS_OPTION + " <dir> [" + DIAGNOSTICS_DOT_OPTION + " true]] [" + THREADS_OPTION + " <count>]" );
+
+    String targetPath = positional.get( 0 );
+
+    LOG.info( "using classloader: {}", positional.size() >= 2 );
+
+    if( positional.size() == 1 )
+      {
+      new Main( new File( targetPath ), toArguments( options ) ).execute();
+      return;
+      }
+
+    if( positional.size() == 2 )
+      {
+      generateViaClassLoader( targetPath, positional.get( 1 ), options );
+      return;
+      }
+
+    if( options.containsKey( DIAGNOSTICS_OPTION ) )
+      throw new IllegalArgumentException( DIAGNOSTICS_OPTION + " requires a single output path, reports would collide" );
+
+    generateAllViaClassLoaders( positional, options );
+    }
+
+  /** generates into the given output path, within a classloader over the given classpath, if the api is stale */
+  private static void generateViaClassLoader( String targetPath, String classpathString, Map<String, String> options )
+    {
+    options = new LinkedHashMap<String, String>( options ); // may be shared by concurrent output paths
+
+    Main main = new Main( new File( targetPath ), toArguments( options ) );
+    Set<File> classpath = ClassLoaderRunner.toFiles( classpathString );
+    Fingerprint prior = Fingerprint.read( new File( targetPath ) );
+    Set<String> stale = main.getStaleDescriptors( Fingerprint.compute( classpath, main.getOptions() ), prior );
+
+    if( stale.isEmpty() )
+      {
+      LOG.info( "api is up to date, skipping generation: {}", targetPath );
+      return;
+      }
+
+    options.put( DESCRIPTORS_OPTION, Joiner.on( ',' ).join( stale ) );
+
+    ClassLoaderRunner.runViaClassLoader( classpath, Main.class.getName(), new File( targetPath ), toArguments( options ) );
+    }
+
+  /**
+   * Generates every output path and classpath pair concurrently. The generator, Flapi and Reflections classes are
+   * loaded once by this classloader and shared, each Cascading version is only visible to its own child classloader.
+   */
+  private static void generateAllViaClassLoaders( List<String> positional, final Map<String, String> options )
+    {
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    ExecutorService executor = Executors.newFixedThreadPool( positional.size() / 2, new ThreadFactory()
+    {
+    @Override
+    public Thread newThread( Runnable runnable )
+      {
+      Thread thread = new Thread( runnable, "fluid-flavour" );
+
+      thread.setDaemon( true );
+      thread.setContextClassLoader( classLoader ); // the parent of each child first classloader
 
-    LOG.info( "using classloader: {}", args.length == 2 );
+      return thread;
+      }
+    } );
 
-    if( args.length == 2 )
-      ClassLoaderRunner.runViaClassLoader( args[ 1 ], Main.class.getName(), targetPath );
-    else
-      new Main( targetPath ).execute();
+    try
+      {
+      Map<String, Future<Void>> futures = new LinkedHashMap<String, Future<Void>>();
+
+      for( int i = 0; i < positional.size(); i += 2 )
+        {
+        final String targetPath = positional.get( i );
+        final String classpath = positional.get( i + 1 );
+
+        futures.put( targetPath, executor.submit( new Callable<Void>()
+        {
+        @Override
+        public Void call() throws Exception
+          {
+          generateViaClassLoader( targetPath, classpath, options );
+
+          return null;
+          }
+        } ) );
+        }
+
+      for( Map.Entry<String, Future<Void>> entry : futures.entrySet() )
+        getResult( entry.getKey(), entry.getValue() );
+      }
+    finally
+      {
+      executor.shutdownNow();
+      }
+    }
+
+  private static Map<String, String> parseOptions( String[] args, List<String> positional )
+    {
+    Map<String, String> options = new LinkedHashMap<String, String>();
+
+    for( int i = 0; i < args.length; i++ )
+      {
+      if( !args[ i ].startsWith( "--" ) )
+        {
+        positional.add( args[ i ] );
+        continue;
+        }
+
+      if( i == args.length - 1 )
+        throw new IllegalArgumentException( "option requires a value: " + args[ i ] );
+
+      options.put( args[ i ], args[ ++i ] );
+      }
+
+    return options;
+    }
+
+  private static String[] toArguments( Map<String, String> options )
+    {
+    List<String> arguments = new ArrayList<String>();
+
+    for( Map.Entry<String, String> entry : options.entrySet() )
+      {
+      arguments.add( entry.getKey() );
+      arguments.add( entry.getValue() );
+      }
+
+    return arguments.toArray( new String[ arguments.size() ] );
+    }
+
+  private static String[] split( String value )
+    {
+    return Iterables.toArray( Splitter.on( ',' ).trimResults().omitEmptyStrings().split( value ), String.class );
     }
 
   public Main( File outputPath )
@@ -55,19 +255,282 @@ public class Main
     this.outputPath = outputPath.toString();
     }
 
+  /**
+   * Constructor Main creates a new instance with the given command line options, see {@link #main(String[])}.
+   * The {@code --descriptors} option limits generation to the given descriptors, regardless of the fingerprint.
+   */
+  public Main( File outputPath, String[] arguments )
+    {
+    this( outputPath );
+
+    Map<String, String> options = parseOptions( arguments, new ArrayList<String>() );
+
+    for( Map.Entry<String, String> entry : options.entrySet() )
+      {
+      if( DESCRIPTORS_OPTION.equals( entry.getKey() ) )
+        this.descriptors = new LinkedHashSet<String>( Arrays.asList( split( entry.getValue() ) ) );
+      else if( PACKAGES_OPTION.equals( entry.getKey() ) )
+        this.packages = split( entry.getValue() );
+      else if( TARGET_PACKAGE_OPTION.equals( entry.getKey() ) )
+        this.targetPackage = entry.getValue();
+      else if( LEAN_OPTION.equals( entry.getKey() ) )
+        this.lean = Boolean.parseBoolean( entry.getValue() );
+      else if( DIAGNOSTICS_OPTION.equals( entry.getKey() ) )
+        this.diagnosticsDir = new File( entry.getValue() );
+      else if( DIAGNOSTICS_DOT_OPTION.equals( entry.getKey() ) )
+        this.diagnosticsDOT = Boolean.parseBoolean( entry.getValue() );
+      else if( THREADS_OPTION.equals( entry.getKey() ) )
+        this.threads = Integer.parseInt( entry.getValue() );
+      else
+        throw new IllegalArgumentException( "unknown option: " + entry.getKey() );
+      }
+
+    if( packages != null && targetPackage == null )
+      throw new IllegalArgumentException( PACKAGES_OPTION + " requires " + TARGET_PACKAGE_OPTION + ", so the generated api does not collide with the default api" );
+
+    if( diagnosticsDOT && diagnosticsDir == null )
+      throw new IllegalArgumentException( DIAGNOSTICS_DOT_OPTION + " requires " + DIAGNOSTICS_OPTION );
+
+    if( threads < 0 )
+      throw new IllegalArgumentException( THREADS_OPTION + " must not be negative, got: " + threads );
+    }
+
   public Main( String outputPath )
     {
     this.outputPath = outputPath;
     }
 
+  private boolean isLibrary()
+    {
+    return packages != null;
+    }
+
+  /** returns the package of every descriptor generated by this instance */
+  private List<String> getDescriptors()
+    {
+    List<String> result = new ArrayList<String>();
+
+    for( String descriptor : isLibrary() ? LIBRARY_DESCRIPTORS : DESCRIPTORS )
+      result.add( Generator.resolvePackage( targetPackage, descriptor ) );
+
+    return result;
+    }
+
+  /** returns the options changing the generated output, so changing them regenerates all descriptors */
+  private List<String> getOptions()
+    {
+    List<String> options = new ArrayList<String>();
+
+    if( isLibrary() )
+      options.addAll( Arrays.asList( PACKAGES_OPTION, Joiner.on( ',' ).join( packages ), TARGET_PACKAGE_OPTION, targetPackage ) );
+
+    if( lean )
+      options.addAll( Arrays.asList( LEAN_OPTION, "true" ) );
+
+    return options;
+    }
+
+  /** returns the descriptors to generate, all of them if a diagnostics report is requested */
+  private Set<String> getStaleDescriptors( Fingerprint current, Fingerprint prior )
+    {
+    if( diagnosticsDir != null )
+      return new LinkedHashSet<String>( getDescriptors() );
+
+    return current.getStaleDescriptors( prior, getDescriptors() );
+    }
+
   public void execute()
     {
     if( outputPath == null )
       throw new IllegalStateException( "outputPath is null" );
 
-    LOG.info( "generating api to: {}", outputPath );
-    new AssemblyGenerator().createAssemblyBuilder( outputPath );
-    new OperationsGenerator().createOperationBuilder( outputPath );
-    new SubAssembliesGenerator().createOperationBuilder( outputPath );
+    File output = new File( outputPath );
+    Fingerprint prior = Fingerprint.read( output );
+    Fingerprint current = Fingerprint.compute( getClasspath(), getOptions() );
+    Set<String> stale = descriptors != null ? descriptors : getStaleDescriptors( current, prior );
+
+    if( stale.isEmpty() )
+      {
+      LOG.info( "api is up to date, skipping generation: {}", outputPath );
+      return;
+      }
+
+    LOG.info( "generating api to: {}, descriptors: {}", outputPath, stale );
+
+    for( Map.Entry<String, Set<String>> entry : generateAll( output, stale ).entrySet() )
+      current.setInputLocations( entry.getKey(), entry.getValue() );
+
+    current.inheritInputLocations( prior );
+    current.write( output );
+    }
+
+  /**
+   * Generates every given descriptor concurrently, all sharing a single scan of the classpath.
+   *
+   * @return the input locations of each descriptor
+   */
+  private Map<String, Set<String>> generateAll( final File output, Set<String> stale )
+    {
+    final TypeIndex typeIndex = isLibrary() ? TypeIndex.scanLibrary( packages ) : TypeIndex.scan( Generator.DEFAULT_PACKAGE );
+    final Diagnostics diagnostics = diagnosticsDir != null ? Diagnostics.open( diagnosticsDir, diagnosticsDOT ) : null;
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    int poolSize = threads == 0 ? stale.size() : Math.min( threads, stale.size() );
+
+    ExecutorService executor = Executors.newFixedThreadPool( poolSize, new ThreadFactory()
+    {
+    @Override
+    public Thread newThread( Runnable runnable )
+      {
+      Thread thread = new Thread( runnable, "fluid-generator" );
+
+      thread.setDaemon( true );
+      thread.setContextClassLoader( classLoader ); // all types must resolve from the caller classloader
+
+      return thread;
+      }
+    } );
+
+    try
+      {
+      Map<String, Future<Set<String>>> futures = new LinkedHashMap<String, Future<Set<String>>>();
+
+      for( final String descriptor : stale )
+        {
+        futures.put( descriptor, executor.submit( new Callable<Set<String>>()
+        {
+        @Override
+        public Set<String> call() throws Exception
+          {
+          deletePackage( output, descriptor );
+
+          return generate( typeIndex, diagnostics, descriptor ).getInputLocations();
+          }
+        } ) );
+        }
+
+      Map<String, Set<String>> locations = new LinkedHashMap<String, Set<String>>();
+
+      for( Map.Entry<String, Future<Set<String>>> entry : futures.entrySet() )
+        locations.put( entry.getKey(), getResult( entry.getKey(), entry.getValue() ) );
+
+      return locations;
+      }
+    finally
+      {
+      executor.shutdownNow();
+
+      if( diagnostics != null )
+        diagnostics.close();
+      }
+    }
+
+  private static <T> T getResult( String name, Future<T> future )
+    {
+    try
+      {
+      return future.get();
+      }
+    catch( InterruptedException exception )
+      {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException( "interrupted generating: " + name, exception );
+      }
+    catch( ExecutionException exception )
+      {
+      Throwable cause = exception.getCause();
+
+      if( cause instanceof RuntimeException )
+        throw (RuntimeException) cause;
+
+      if( cause instanceof Error )
+        throw (Error) cause;
+
+      throw new IllegalStateException( "failed generating: " + name, cause );
+      }
+    }
+
+  private Generator generate( TypeIndex typeIndex, Diagnostics diagnostics, String descriptor )
+    {
+    if( resolvePackage( AssemblyGenerator.PACKAGE_NAME ).equals( descriptor ) )
+      {
+      AssemblyGenerator generator = new AssemblyGenerator( typeIndex );
+      generator.setTargetPackage( targetPackage );
+      generator.setEnableLeanApi( lean );
+      generator.setDiagnostics( diagnostics );
+      generator.createAssemblyBuilder( outputPath );
+      return generator;
+      }
+
+    if( resolvePackage( OperationsGenerator.PACKAGE_NAME ).equals( descriptor ) )
+      {
+      OperationsGenerator generator = new OperationsGenerator( typeIndex );
+      generator.setTargetPackage( targetPackage );
+      generator.setEnableLeanApi( lean );
+      generator.setDiagnostics( diagnostics );
+      generator.createOperationBuilder( outputPath );
+      return generator;
+      }
+
+    if( resolvePackage( SubAssembliesGenerator.PACKAGE_NAME ).equals( descriptor ) )
+      {
+      SubAssembliesGenerator generator = new SubAssembliesGenerator( typeIndex );
+      generator.setTargetPackage( targetPackage );
+      generator.setEnableLeanApi( lean );
+      generator.setDiagnostics( diagnostics );
+      generator.createOperationBuilder( outputPath );
+      return generator;
+      }
+
+    throw new IllegalArgumentException( "unknown descriptor: " + descriptor );
+    }
+
+  private String resolvePackage( String packageName )
+    {
+    return Generator.resolvePackage( targetPackage, packageName );
+    }
+
+  /** removes the prior output of a descriptor, so types no longer on the classpath leave no stale builders */
+  private static void deletePackage( File output, String descriptor )
+    {
+    delete( new File( output, descriptor.replace( '.', File.separatorChar ) ) );
+    }
+
+  private static void delete( File file )
+    {
+    File[] children = file.listFiles();
+
+    if( children != null )
+      {
+      for( File child : children )
+        delete( child );
+      }
+
+    if( file.exists() && !file.delete() )
+      LOG.warn( "unable to delete: {}", file );
+    }
+
+  private static Set<File> getClasspath()
+    {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    if( !( classLoader instanceof ChildFirstURLClassLoader ) )
+      return ClassLoaderRunner.toFiles( System.getProperty( "java.class.path", "" ) );
+
+    Set<File> files = new LinkedHashSet<File>();
+
+    for( URL url : ( (ChildFirstURLClassLoader) classLoader ).getURLs() )
+      {
+      try
+        {
+        files.add( new File( url.toURI() ) );
+        }
+      catch( URISyntaxException exception )
+        {
+        files.add( new File( url.getPath() ) );
+        }
+      }
+
+    return files;
     }
   }
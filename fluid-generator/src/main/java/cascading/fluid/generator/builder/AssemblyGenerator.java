@@ -21,6 +21,8 @@
 package cascading.fluid.generator.builder;
 
 import cascading.fluid.generator.util.Reflection;
+import cascading.fluid.generator.util.TypeIndex;
+import cascading.fluid.generator.util.Types;
 import cascading.pipe.Checkpoint;
 import cascading.pipe.CoGroup;
 import cascading.pipe.Each;
@@ -29,6 +31,7 @@ import cascading.pipe.GroupBy;
 import cascading.pipe.HashJoin;
 import cascading.pipe.Merge;
 import cascading.pipe.Pipe;
+import cascading.pipe.Splice;
 import cascading.pipe.SubAssembly;
 import unquietcode.tools.flapi.ClassReference;
 import unquietcode.tools.flapi.Descriptor;
@@ -40,6 +43,12 @@ import unquietcode.tools.flapi.builder.Descriptor.DescriptorBuilder_2m1_4f_2m2_4
  */
 public class AssemblyGenerator extends Generator
   {
+  public static final String PACKAGE_NAME = "cascading.fluid.api.assembly";
+  public static final String DESCRIPTOR_NAME = "Assembly";
+
+  private static final String OUTGOING_BLOCK = "Outgoing";
+  private static final String OUTGOING_METHOD = "outgoing(cascading.tuple.Fields outgoingSelector)";
+
   public AssemblyGenerator()
     {
     }
@@ -49,11 +58,24 @@ public class AssemblyGenerator extends Generator
     super( packages );
     }
 
+  public AssemblyGenerator( TypeIndex typeIndex )
+    {
+    super( typeIndex );
+    }
+
+  @Override
+  protected String[] getInputTypeNames()
+    {
+    return new String[]{"cascading.pipe.Pipe"};
+    }
+
   public void createAssemblyBuilder( String targetPath )
     {
+    String packageName = resolvePackage( getTargetPackage(), PACKAGE_NAME );
+
     DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder = getBuilder()
-      .setPackage( "cascading.fluid.api.assembly" )
-      .setDescriptorName( "Assembly" )
+      .setPackage( packageName )
+      .setDescriptorName( DESCRIPTOR_NAME )
       .setStartingMethodName( "startAssembly" );
 
     builder = addBranchBlock( builder );
@@ -63,6 +85,28 @@ public class AssemblyGenerator extends Generator
     Descriptor build = builder.enableCondensedClassNames().build();
 
     writeBuilder( targetPath, build );
+    writeHelpers( targetPath, packageName, DESCRIPTOR_NAME, PIPE_FACTORY );
+    }
+
+  /**
+   * Adds a block with a single outgoing method, like {@code function(function).outgoing(fields)}.
+   * <p/>
+   * In a lean api the block is generated once and referenced, instead of repeating identical state interfaces for
+   * every operation type.
+   */
+  private <P> BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<P> addOutgoingBlock( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<P> block, String methodSignature, boolean isFirst )
+    {
+    if( isEnableLeanApi() && !isFirst )
+      return block.addBlockReference( OUTGOING_BLOCK, methodSignature ).last();
+
+    if( isEnableLeanApi() )
+      return block.startBlock( OUTGOING_BLOCK, methodSignature ).last()
+        .addMethod( OUTGOING_METHOD ).last()
+        .endBlock();
+
+    return block.startBlock( methodSignature ).last()
+      .addMethod( OUTGOING_METHOD ).last()
+      .endBlock();
     }
 
   private DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> addBranchBlock( DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder )
@@ -73,9 +117,12 @@ public class AssemblyGenerator extends Generator
       .any();
 
     branch = branch
-      .addMethod( "pipe(String name)" ).any();
+      .addMethod( "pipe(String name)" ).any()
+      .addMethod( "estimatedSize(long bytes)" )
+      .withDocumentation( "Estimate the size in bytes of the current branch tail, used to select a CoGroup or HashJoin." )
+      .any();
 
-    branch = branch
+    BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>> each = branch
       .startBlock( "Each", "each(cascading.tuple.Fields argumentSelector)" )
       .withDocumentation()
       .addContent( "Append a new Each operator to the current branch with the given argumentSelector.\n" )
@@ -86,12 +133,11 @@ public class AssemblyGenerator extends Generator
       .withParameter( "creates", Each.class )
       .withParameter( "method", "each(cascading.tuple.Fields argumentSelector)" )
       .finish()
-      .any( EACH )
+      .any( EACH );
 
-      .startBlock( "function(cascading.operation.Function function)" ).last()
-      .addMethod( "outgoing(cascading.tuple.Fields outgoingSelector)" ).last()
-      .endBlock() // function
+    each = addOutgoingBlock( each, "function(cascading.operation.Function function)", true ); // function
 
+    branch = each
       .addMethod( "filter(cascading.operation.Filter filter)" ).last() // debug
 
       .startBlock( "debugLevel(cascading.operation.DebugLevel debugLevel)" ).last()
@@ -104,7 +150,7 @@ public class AssemblyGenerator extends Generator
 
       .endBlock(); // each
 
-    branch = branch
+    BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>> groupBy = branch
       .startBlock( "GroupBy", "groupBy(cascading.tuple.Fields groupFields)" )
       .withDocumentation()
       .addContent( "Append a new GroupBy pipe to the current branch with the given groupFields.\n" )
@@ -116,8 +162,9 @@ public class AssemblyGenerator extends Generator
       .withParameter( "createOnNext", true )
       .withParameter( "method", "groupBy(cascading.tuple.Fields groupFields)" )
       .finish()
-      .any( GROUP )
+      .any( GROUP );
 
+    BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>> every = groupBy
       .startBlock( "Every", "every(cascading.tuple.Fields argumentSelector)" )//.after( GROUP )
       .withDocumentation()
       .addContent( "Append a new Every operator to the current branch with the given argumentSelector.\n" )
@@ -128,16 +175,12 @@ public class AssemblyGenerator extends Generator
       .withParameter( "creates", Every.class )
       .withParameter( "method", "every(cascading.tuple.Fields argumentSelector)" )
       .finish()
-      .any( EVERY )
+      .any( EVERY );
 
-      .startBlock( "aggregator(cascading.operation.Aggregator aggregator)" ).last()
-      .addMethod( "outgoing(cascading.tuple.Fields outgoingSelector)" ).last()
-      .endBlock() // aggregator
-
-      .startBlock( "buffer(cascading.operation.Buffer buffer)" ).last()
-      .addMethod( "outgoing(cascading.tuple.Fields outgoingSelector)" ).last()
-      .endBlock() // buffer
+    every = addOutgoingBlock( every, "aggregator(cascading.operation.Aggregator aggregator)", false ); // aggregator
+    every = addOutgoingBlock( every, "buffer(cascading.operation.Buffer buffer)", false ); // buffer
 
+    branch = every
       .endBlock() // every
 
       .addMethod( "completeGroupBy()" ).last()
@@ -203,9 +246,23 @@ public class AssemblyGenerator extends Generator
 
     builder = addPipeBranchBuilderType( builder, "CoGroup", Reflection.loadClass( CoGroup.class.getName() ), COGROUP, false, FACTORY );
     builder = addPipeBranchBuilderType( builder, "HashJoin", Reflection.loadClass( HashJoin.class.getName() ), HASH_JOIN, false, FACTORY );
+    builder = addJoinBuilderType( builder );
     builder = addPipeBranchBuilderType( builder, "GroupByMerge", Reflection.loadClass( GroupBy.class.getName() ), GROUP_MERGE, true, FACTORY );
     builder = addPipeBranchBuilderType( builder, "Merge", Reflection.loadClass( Merge.class.getName() ), MERGE, true, FACTORY );
 
     return builder;
     }
+
+  /**
+   * Adds the startJoin() block, creating a CoGroup from the constructors it shares with HashJoin, so the optimizer may
+   * select either join type for it. Joins started via startCoGroup() or startHashJoin() are always kept as built.
+   */
+  private DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> addJoinBuilderType( DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder )
+    {
+    Class<? extends Splice> coGroup = Reflection.loadClass( CoGroup.class.getName() );
+    Class<? extends Splice> hashJoin = Reflection.loadClass( HashJoin.class.getName() );
+    Class<? extends Splice> splice = Reflection.loadClass( Splice.class.getName() );
+
+    return addPipeTypeBuilderBlock( builder, coGroup, splice, Types.getConstructorsSharedWith( coGroup, hashJoin ), "Join", JOIN, FACTORY );
+    }
   }
@@ -22,27 +22,35 @@ package cascading.fluid.generator.builder;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.annotation.Nullable;
 
+import cascading.fluid.generator.util.ConstructorSpec;
+import cascading.fluid.generator.util.Diagnostics;
+import cascading.fluid.generator.util.Fingerprint;
 import cascading.fluid.generator.util.ParameterGraphs;
 import cascading.fluid.generator.util.Prefix;
+import cascading.fluid.generator.util.Reflection;
 import cascading.fluid.generator.util.Text;
+import cascading.fluid.generator.util.TypeIndex;
+import cascading.fluid.generator.util.TypeSource;
+import cascading.fluid.generator.util.TypeSpec;
 import cascading.fluid.generator.util.Types;
 import cascading.pipe.Splice;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.Graphs;
-import org.jgrapht.alg.FloydWarshallShortestPaths;
 import org.jgrapht.event.TraversalListenerAdapter;
 import org.jgrapht.event.VertexTraversalEvent;
 import org.jgrapht.traverse.DepthFirstIterator;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import unquietcode.tools.flapi.ClassReference;
@@ -79,20 +87,63 @@ public abstract class Generator
   public static final int MERGE = 6;
   public static final int HASH_JOIN = 7;
   public static final int AGGREGATE_BY = 8;
+  public static final int JOIN = 9;
 
   protected static MethodLogger methodLogger = MethodLogger.from( System.out );
-  protected static Reflections reflections;
+  protected final TypeIndex typeIndex;
+  protected final TypeSource typeSource;
 
   boolean enableVarArgs = true; // only used if constructor parameter was declared with varargs
+  boolean enableConcreteHelpers = true; // helpers without a concrete class fall back to runtime proxies
+  boolean enableLeanApi = false; // identical operation sub-blocks are generated once and referenced
+  String targetPackage; // if set, replaces the parent package of the generated descriptor
+  Diagnostics diagnostics; // if set, every generated type is recorded, otherwise no diagnostic I/O is done
+
+  private final Set<String> sharedBlocks = new HashSet<String>(); // lean blocks defined by the current descriptor
 
   protected Generator()
     {
-    reflections = new Reflections( DEFAULT_PACKAGE );
+    this( TypeIndex.scan( DEFAULT_PACKAGE ) );
     }
 
   protected Generator( String... packages )
     {
-    reflections = new Reflections( (Object[]) packages );
+    this( TypeIndex.scan( packages ) );
+    }
+
+  protected Generator( TypeIndex typeIndex )
+    {
+    this.typeIndex = typeIndex;
+    this.typeSource = typeIndex;
+    }
+
+  /**
+   * Constructor Generator creates a new instance reading sub-types from the given source only, no classpath is
+   * scanned and {@link #getInputLocations()} is empty unless the source is a {@link TypeIndex}.
+   */
+  protected Generator( TypeSource typeSource )
+    {
+    this.typeIndex = typeSource instanceof TypeIndex ? (TypeIndex) typeSource : null;
+    this.typeSource = typeSource;
+    }
+
+  public TypeIndex getTypeIndex()
+    {
+    return typeIndex;
+    }
+
+  /**
+   * Method resolvePackage returns the package a descriptor is generated into, given an optional target package.
+   * <p/>
+   * The target package replaces the parent of the default package, so {@code cascading.fluid.api.operation} is
+   * generated into {@code com.example.fluid.operation} for the target {@code com.example.fluid}.
+   */
+  public static String resolvePackage( String targetPackage, String packageName )
+    {
+    if( targetPackage == null )
+      return packageName;
+
+    return targetPackage + packageName.substring( packageName.lastIndexOf( '.' ) );
     }
 
   public boolean isEnableVarArgs()
@@ -105,6 +156,84 @@ public abstract class Generator
     this.enableVarArgs = enableVarArgs;
     }
 
+  public boolean isEnableConcreteHelpers()
+    {
+    return enableConcreteHelpers;
+    }
+
+  public void setEnableConcreteHelpers( boolean enableConcreteHelpers )
+    {
+    this.enableConcreteHelpers = enableConcreteHelpers;
+    }
+
+  public boolean isEnableLeanApi()
+    {
+    return enableLeanApi;
+    }
+
+  public void setEnableLeanApi( boolean enableLeanApi )
+    {
+    this.enableLeanApi = enableLeanApi;
+    }
+
+  public String getTargetPackage()
+    {
+    return targetPackage;
+    }
+
+  public void setTargetPackage( String targetPackage )
+    {
+    this.targetPackage = targetPackage;
+    }
+
+  public Diagnostics getDiagnostics()
+    {
+    return diagnostics;
+    }
+
+  public void setDiagnostics( Diagnostics diagnostics )
+    {
+    this.diagnostics = diagnostics;
+    }
+
+  /**
+   * Method getInputTypeNames returns the names of the types whose sub-types this generator creates builders for.
+   */
+  protected abstract String[] getInputTypeNames();
+
+  /**
+   * Method getInputLocations returns the classpath entries providing the input types of this generator.
+   *
+   * @return the absolute paths of the jars and directories read by this generator
+   */
+  public Set<String> getInputLocations()
+    {
+    Set<String> locations = new TreeSet<String>();
+
+    if( typeIndex == null )
+      return locations;
+
+    for( String name : getInputTypeNames() )
+      {
+      Class<?> type = Reflection.loadClass( name );
+
+      addLocation( locations, type );
+
+      for( Class<?> subType : typeIndex.getSubTypesOf( type ) )
+        addLocation( locations, subType );
+      }
+
+    return locations;
+    }
+
+  private static void addLocation( Set<String> locations, Class<?> type )
+    {
+    File location = Fingerprint.getLocation( type );
+
+    if( location != null )
+      locations.add( location.getPath() );
+    }
+
   protected void writeBuilder( String targetPath, Descriptor build )
     {
     new File( targetPath ).mkdirs();
@@ -112,8 +241,20 @@ public abstract class Generator
     build.writeToFolder( targetPath );
     }
 
+  protected void writeHelpers( String targetPath, String packageName, String descriptorName, String childFactoryClass )
+    {
+    if( !isEnableConcreteHelpers() )
+      return;
+
+    String rootHelper = packageName + "." + descriptorName + "$" + descriptorName + "Helper";
+
+    new HelperGenerator( targetPath, packageName ).generateHelpers( rootHelper, childFactoryClass );
+    }
+
   protected DescriptorBuilder.Start getBuilder()
     {
+    sharedBlocks.clear(); // block references do not span descriptors
+
     if( LOG.isDebugEnabled() )
       return Flapi.builder( methodLogger );
 
@@ -122,6 +263,12 @@ public abstract class Generator
 
   protected <T> DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> addBuilderBlock( DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder, Class<T> type, final boolean isFactory, int group, String factoryClass, boolean allConstructors )
     {
+    if( typeSource.getInstantiableSubTypes( type, allConstructors ).isEmpty() )
+      {
+      LOG.info( "no sub-types of: {}, skipping block", type.getName() );
+      return builder;
+      }
+
     String typeName = type.getSimpleName();
     MethodBuilder_2m12_4f_2m13_4f_2m14_4f_2m15_4f_2m16_4f_2m17_4f_2m18_4f tmp1 = builder
       .startBlock( typeName, Text.toFirstLower( typeName ) + "()" );
@@ -134,18 +281,19 @@ public abstract class Generator
 
   protected <T> BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f addSubTypeBlocks( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, Class<T> type, final boolean isFactory, boolean addReference, String factoryClass, boolean allConstructors, Class... startsWithExclusive )
     {
-    Map<Class<? extends T>, Set<Constructor>> constructorMap = Types.getAllInstantiableSubTypes( reflections, type, allConstructors );
+    Map<TypeSpec, Set<ConstructorSpec>> constructorMap = typeSource.getInstantiableSubTypes( type, allConstructors );
+    String[] startsWithNames = ConstructorSpec.toNames( startsWithExclusive );
 
-    for( final Class<? extends T> subType : constructorMap.keySet() )
+    for( TypeSpec subType : constructorMap.keySet() )
       {
-      Set<Constructor> constructors = constructorMap.get( subType );
+      Set<ConstructorSpec> constructors = constructorMap.get( subType );
 
-      LOG.info( "adding block {}: subtype: {}, constructors: {}", type.getSimpleName(), subType.getName(), constructors.size() );
+      LOG.debug( "adding block {}: subtype: {}, constructors: {}", type.getSimpleName(), subType.getName(), constructors.size() );
 
       if( constructors.size() > 1 )
-        block = addTypeBuilderBlock( block, isFactory, subType, constructors, addReference, factoryClass, startsWithExclusive );
+        block = addTypeBuilderBlock( block, isFactory, subType, constructors, addReference, factoryClass, startsWithNames );
       else
-        block = addTypeBuilderMethod( block, isFactory, subType, constructors, factoryClass, startsWithExclusive );
+        block = addTypeBuilderMethod( block, isFactory, subType, constructors, factoryClass, startsWithNames );
       }
 
     return block;
@@ -167,24 +315,35 @@ public abstract class Generator
 
   protected <T> DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> addPipeTypeBuilderBlock( DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> block, final Class<? extends T> type, Set<Constructor> constructors, String operationName, int groupID, String factoryClass, Class... startsWithExclusive )
     {
+    return addPipeTypeBuilderBlock( block, type, type, constructors, operationName, groupID, factoryClass, startsWithExclusive );
+    }
+
+  protected <T> DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> addPipeTypeBuilderBlock( DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> block, final Class<? extends T> type, Class<?> returnType, Set<Constructor> constructors, String operationName, int groupID, String factoryClass, Class... startsWithExclusive )
+    {
+    long start = System.nanoTime();
     String startMethod = "start" + operationName + "()";
     String endMethod = "create" + operationName + "()";
 
-    DirectedGraph<Prefix<String, String, Class>, Integer> parameterGraph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
+    DirectedGraph<Prefix<Integer, String, String>, Integer> parameterGraph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
 
     if( parameterGraph.vertexSet().size() == 2 ) // has no parameters
       {
-      LOG.info( "on type: {}, skipping methodName: {}", type.getName(), endMethod );
+      LOG.debug( "on type: {}, skipping methodName: {}", type.getName(), endMethod );
       return block;
       }
 
-    LOG.info( "to type: {}, adding methodName: {}", type.getName(), startMethod );
+    LOG.debug( "to type: {}, adding methodName: {}", type.getName(), startMethod );
+
+    String description = "Create a new " + type.getSimpleName() + " pipe to the current branch with the given groupFields.\n";
+
+    if( returnType != type )
+      description += "The created pipe may be replaced by any " + returnType.getSimpleName() + " type selected when optimizing the assembly.\n";
 
     // startBlock
     BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>> tmp = block
       .startBlock( operationName, startMethod )
       .withDocumentation()
-      .addContent( "Create a new " + type.getSimpleName() + " pipe to the current branch with the given groupFields.\n" )
+      .addContent( description )
       .addContent( "@see " + type.getName() )
       .finish()
       .addAnnotation( METHOD_ANNOTATION )
@@ -194,7 +353,9 @@ public abstract class Generator
       .finish()
       .any( groupID );
 
-    BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f blockBuilder = generateBlock( tmp, true, type, endMethod, parameterGraph );
+    BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f blockBuilder = generateBlock( tmp, true, new TypeSpec( type.getCanonicalName(), type.getSimpleName(), returnType ), endMethod, parameterGraph );
+
+    record( type.getName(), startMethod, parameterGraph, ParameterGraphs.countMethods( parameterGraph ) + 1, start );
 
     return ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>) blockBuilder )
 //      .addMethod( endMethod ).last( type )
@@ -203,53 +364,70 @@ public abstract class Generator
 
   protected <T> BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f addTypeBuilderMethod( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final Class<? extends T> type, Set<Constructor> constructors, String factoryClass, Class... startsWithExclusive )
     {
-    final DirectedGraph<Prefix<String, String, Class>, Integer> graph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
+    return addTypeBuilderMethod( block, isFactory, TypeSpec.of( type ), ConstructorSpec.of( constructors ), factoryClass, ConstructorSpec.toNames( startsWithExclusive ) );
+    }
+
+  protected BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f addTypeBuilderMethod( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final TypeSpec type, Collection<ConstructorSpec> constructors, String factoryClass, String... startsWithExclusive )
+    {
+    long start = System.nanoTime();
+    final DirectedGraph<Prefix<Integer, String, String>, Integer> graph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
 
     final String operationName = type.getSimpleName();
     String methodName = ( isFactory ? operationName : Text.toFirstLower( operationName ) ); // Factory methods have upper first letter
 
     methodName = createMethodSignature( methodName, graph );
 
-    LOG.info( "to type: {}, adding methodName: {}, params: {}", type.getName(), methodName, graph.vertexSet().size() - 2 );
+    LOG.debug( "to type: {}, adding methodName: {}, params: {}", type.getName(), methodName, graph.vertexSet().size() - 2 );
 
     // method
     MethodBuilder_2m12_4f_2m13_4f_2m14_4f_2m15_4f_2m16_4f_2m17_4f_2m18_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>> tmp = ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>) block )
       .addMethod( methodName )
       .addAnnotation( METHOD_ANNOTATION )
       .withParameter( "factory", new ClassReference( factoryClass ) )
-      .withParameter( "creates", type )
+      .withParameter( "creates", new ClassReference( type.getName() ) )
       .withParameter( "method", methodName )
       .finish();
 
-    block = isFactory ? tmp.last( type ) : tmp.any(); // allow subsequent pipe elements
+    block = isFactory ? tmp.last( type.getReturnType() ) : tmp.any(); // allow subsequent pipe elements
+
+    record( type.getName(), methodName, graph, 1, start );
 
     return block;
     }
 
   protected <T> BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f addTypeBuilderBlock( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final Class<? extends T> type, Set<Constructor> constructors, boolean addReference, String factoryClass, Class... startsWithExclusive )
     {
+    return addTypeBuilderBlock( block, isFactory, TypeSpec.of( type ), ConstructorSpec.of( constructors ), addReference, factoryClass, ConstructorSpec.toNames( startsWithExclusive ) );
+    }
+
+  protected BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f addTypeBuilderBlock( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final TypeSpec type, Collection<ConstructorSpec> constructors, boolean addReference, String factoryClass, String... startsWithExclusive )
+    {
+    long start = System.nanoTime();
     final String operationName = type.getSimpleName();
     String methodName = ( isFactory ? operationName : Text.toFirstLower( operationName ) ) + "()"; // Factory methods have upper first letter
 
-    DirectedGraph<Prefix<String, String, Class>, Integer> parameterGraph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
+    DirectedGraph<Prefix<Integer, String, String>, Integer> parameterGraph = ParameterGraphs.createParameterGraph( constructors, true, startsWithExclusive );
 
     if( parameterGraph.vertexSet().size() == 2 ) // has no parameters
       {
-      LOG.info( "on type: {}, skipping methodName: {}", type.getName(), methodName );
+      LOG.debug( "on type: {}, skipping methodName: {}", type.getName(), methodName );
       return block;
       }
 
-    LOG.info( "to type: {}, adding methodName: {}", type.getName(), methodName );
+    LOG.debug( "to type: {}, adding methodName: {}", type.getName(), methodName );
 
     if( addReference )
+      {
+      record( type.getName(), methodName, parameterGraph, 1, start );
       return (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) block.addBlockReference( operationName, methodName ).any();
+      }
 
     // startBlock
     MethodBuilder_2m12_4f_2m13_4f_2m14_4f_2m15_4f_2m16_4f_2m17_4f_2m18_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>>> tmp = ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>) block )
       .startBlock( operationName, methodName )
       .addAnnotation( METHOD_ANNOTATION )
       .withParameter( "factory", new ClassReference( factoryClass ) )
-      .withParameter( "creates", type )
+      .withParameter( "creates", new ClassReference( type.getName() ) )
       .withParameter( "method", methodName )
       .finish();
 
@@ -257,6 +435,8 @@ public abstract class Generator
 
     BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f blockBuilder = generateBlock( block, isFactory, type, "end()", parameterGraph );
 
+    record( type.getName(), methodName, parameterGraph, ParameterGraphs.countMethods( parameterGraph ) + 1, start );
+
     // endBlock
     block = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>) blockBuilder
       .endBlock();
@@ -264,46 +444,75 @@ public abstract class Generator
     return block;
     }
 
-  private <T> BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f generateBlock( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final Class<? extends T> type, final String endMethod, final DirectedGraph<Prefix<String, String, Class>, Integer> graph )
+  private void record( String type, String method, DirectedGraph<Prefix<Integer, String, String>, Integer> graph, int methods, long start )
+    {
+    if( diagnostics != null )
+      diagnostics.record( getClass().getSimpleName(), type, method, graph, methods, System.nanoTime() - start );
+    }
+
+  private BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f generateBlock( BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f block, final boolean isFactory, final TypeSpec type, final String endMethod, final DirectedGraph<Prefix<Integer, String, String>, Integer> graph )
     {
     final BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f[] blockBuilder = {
       block
     };
 
-    final FloydWarshallShortestPaths<Prefix<String, String, Class>, Integer> shortestPaths = new FloydWarshallShortestPaths<Prefix<String, String, Class>, Integer>( graph );
+    final Map<Prefix<Integer, String, String>, Integer> depths = ParameterGraphs.getDepths( graph, BEGIN );
+    final Set<Prefix<Integer, String, String>> referenced = Collections.newSetFromMap( new IdentityHashMap<Prefix<Integer, String, String>, Boolean>() );
 
-    ParameterGraphs.writeDOT( type.getName(), graph );
-
-    TraversalListenerAdapter<Prefix<String, String, Class>, Integer> listener = new TraversalListenerAdapter<Prefix<String, String, Class>, Integer>()
+    TraversalListenerAdapter<Prefix<Integer, String, String>, Integer> listener = new TraversalListenerAdapter<Prefix<Integer, String, String>, Integer>()
     {
     @Override
-    public void vertexTraversed( VertexTraversalEvent<Prefix<String, String, Class>> event )
+    public void vertexTraversed( VertexTraversalEvent<Prefix<Integer, String, String>> event )
       {
-      Prefix<String, String, Class> vertex = event.getVertex();
+      Prefix<Integer, String, String> vertex = event.getVertex();
 
       if( vertex == BEGIN || vertex == END )
         return;
 
-      Integer current = Iterables.getFirst( new TreeSet<Integer>( graph.incomingEdgesOf( vertex ) ), 0 );
-      Integer prior = Iterables.getFirst( new TreeSet<Integer>( graph.incomingEdgesOf( graph.getEdgeSource( current ) ) ), null );
-
-      int depth = (int) shortestPaths.shortestDistance( BEGIN, vertex );
+      int depth = depths.get( vertex );
 
       String methodSignature = createMethodSignature( vertex );
 
-      LOG.info( "{} - opening property: {}, creating method: {}, group: {}, prior: {}", depth, vertex.getLhs(), methodSignature, depth, prior != null );
+      LOG.debug( "{} - opening property: {}, creating method: {}, group: {}, prior: {}", depth, vertex.getLhs(), methodSignature, depth, depth > 1 );
 
       int outDegree = graph.outDegreeOf( vertex );
       boolean hasTerminalPath = Graphs.successorListOf( graph, vertex ).contains( END );
       boolean isTerminal = outDegree == 1 && hasTerminalPath;
 
-      if( hasTerminalPath && isFactory )
+      // every terminal block only holds the end method, so a lean api generates it once per end method and type
+      String sharedName = isEnableLeanApi() && isTerminal ? getSharedBlockName( endMethod, isFactory ? type.getReturnType() : null ) : null;
+
+      if( sharedName != null && !sharedBlocks.add( sharedName ) )
+        {
+        blockBuilder[ 0 ] = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) blockBuilder[ 0 ]
+          .addBlockReference( sharedName, methodSignature )
+          .last();
+
+        referenced.add( vertex );
+        }
+      else if( sharedName != null && isFactory )
+        {
+        blockBuilder[ 0 ] = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>) blockBuilder[ 0 ] )
+          .startBlock( sharedName, methodSignature )
+          .last()
+          .addMethod( endMethod )
+          .last( type.getReturnType() );
+        }
+      else if( sharedName != null )
+        {
+        blockBuilder[ 0 ] = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>) blockBuilder[ 0 ] )
+          .startBlock( sharedName, methodSignature )
+          .last()
+          .addMethod( endMethod )
+          .last();
+        }
+      else if( hasTerminalPath && isFactory )
         {
         blockBuilder[ 0 ] = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) ( (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f<DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void>>>) blockBuilder[ 0 ] )
           .startBlock( methodSignature )
           .last()
           .addMethod( endMethod )
-          .last( type );
+          .last( type.getReturnType() );
         }
       else if( hasTerminalPath )
         {
@@ -321,21 +530,21 @@ public abstract class Generator
       }
 
     @Override
-    public void vertexFinished( VertexTraversalEvent<Prefix<String, String, Class>> event )
+    public void vertexFinished( VertexTraversalEvent<Prefix<Integer, String, String>> event )
       {
-      Prefix<String, String, Class> vertex = event.getVertex();
+      Prefix<Integer, String, String> vertex = event.getVertex();
 
-      if( vertex == BEGIN || vertex == END )
+      if( vertex == BEGIN || vertex == END || referenced.contains( vertex ) )
         return;
 
-      LOG.info( "{} - closing property: {}", (int) shortestPaths.shortestDistance( BEGIN, vertex ), vertex.getLhs() );
+      LOG.debug( "{} - closing property: {}", depths.get( vertex ), vertex.getLhs() );
 
       blockBuilder[ 0 ] = (BlockBuilder_2m1_4f_2m2_4f_2m3_4f_2m10_4f_2m11_4f) blockBuilder[ 0 ]
         .endBlock();
       }
     };
 
-    DepthFirstIterator<Prefix<String, String, Class>, Integer> iterator = new DepthFirstIterator<Prefix<String, String, Class>, Integer>( graph, BEGIN );
+    DepthFirstIterator<Prefix<Integer, String, String>, Integer> iterator = new DepthFirstIterator<Prefix<Integer, String, String>, Integer>( graph, BEGIN );
 
     iterator.addTraversalListener( listener );
 
@@ -345,21 +554,29 @@ public abstract class Generator
     return blockBuilder[ 0 ];
     }
 
-  private String createMethodSignature( String methodName, final DirectedGraph<Prefix<String, String, Class>, Integer> graph )
+  /** Returns the name of the block holding only the given end method, returning the given type, or its parent if null. */
+  private static String getSharedBlockName( String endMethod, Class returnType )
+    {
+    String name = "Shared" + Text.toFirstUpper( endMethod.substring( 0, endMethod.indexOf( '(' ) ) );
+
+    return returnType == null ? name : name + returnType.getSimpleName();
+    }
+
+  private String createMethodSignature( String methodName, final DirectedGraph<Prefix<Integer, String, String>, Integer> graph )
     {
-    DepthFirstIterator<Prefix<String, String, Class>, Integer> iterator = new DepthFirstIterator<Prefix<String, String, Class>, Integer>( graph, BEGIN );
+    DepthFirstIterator<Prefix<Integer, String, String>, Integer> iterator = new DepthFirstIterator<Prefix<Integer, String, String>, Integer>( graph, BEGIN );
 
     String args = Joiner
       .on( "," )
       .skipNulls()
       .join(
-        Iterators.transform( iterator, new Function<Prefix<String, String, Class>, Object>()
+        Iterators.transform( iterator, new Function<Prefix<Integer, String, String>, Object>()
         {
         boolean seenArrays = false;
 
         @Nullable
         @Override
-        public Object apply( @Nullable Prefix<String, String, Class> prefix )
+        public Object apply( @Nullable Prefix<Integer, String, String> prefix )
           {
           if( prefix.getPair() == null ) // is BEGIN or END
             return null;
@@ -373,7 +590,7 @@ public abstract class Generator
             }
           finally
             {
-            seenArrays |= prefix.getRhs().isArray();
+            seenArrays |= ConstructorSpec.isArray( prefix.getRhs() );
             }
           }
         } )
@@ -382,24 +599,25 @@ public abstract class Generator
     return methodName + "(" + args + ")";
     }
 
-  private String createMethodSignature( Prefix<String, String, Class> pair )
+  private String createMethodSignature( Prefix<Integer, String, String> pair )
     {
     return pair.getLhs() + "(" + createMethodArg( pair, true ) + ")";
     }
 
-  private String createMethodArg( Prefix<String, String, Class> pair, boolean varArgsAllowed )
+  private String createMethodArg( Prefix<Integer, String, String> pair, boolean varArgsAllowed )
     {
     String property = pair.getLhs();
-    Class parameterType = pair.getRhs();
+    String parameterType = pair.getRhs();
 
-    if( !parameterType.isArray() )
-      return parameterType.getName() + " " + property;
+    if( !ConstructorSpec.isArray( parameterType ) )
+      return parameterType + " " + property;
 
-    boolean isVarArg = ( (Constructor) pair.getPayload( "constructor" ) ).isVarArgs();
+    boolean isVarArg = (Boolean) pair.getPayload( "varArgs" );
+    String componentType = ConstructorSpec.getComponentType( parameterType );
 
     if( isEnableVarArgs() && isVarArg && varArgsAllowed )
-      return parameterType.getComponentType().getName() + "... " + property;
+      return componentType + "... " + property;
     else
-      return parameterType.getComponentType().getName() + "[] " + property;
+      return componentType + "[] " + property;
     }
   }
@@ -0,0 +1,861 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.builder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import cascading.fluid.generator.util.ChildFirstURLClassLoader;
+import cascading.fluid.generator.util.Reflection;
+import com.google.common.base.Joiner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static cascading.fluid.generator.builder.Generator.FACTORY;
+import static cascading.fluid.generator.builder.Generator.METHOD_ANNOTATION;
+
+/**
+ * Class HelperGenerator emits a concrete class for every helper interface Flapi generated for a descriptor.
+ * <p/>
+ * The concrete classes extend the {@code Factory} type the runtime would otherwise give a javassist proxy, and
+ * hand each call to the {@code HelperDispatcher} with a constant {@code MethodDescriptor}, so no proxy class is
+ * generated and no {@link Method} is dispatched at runtime. Helpers reachable with more than one super type are
+ * skipped and left to the proxy fallback.
+ * <p/>
+ * Where a helper extends {@code Factory} and is reached along a single path, the type it creates and the
+ * constructor it calls are known when generating, so its methods create the child helpers and call
+ * {@code new} on the created type directly, only dispatching the methods the dispatcher intercepts. Helpers
+ * of a {@code PipeFactory} prepend the current pipe at runtime, so they always dispatch.
+ * <p/>
+ * The generated interfaces must be compiled to be inspected, so they are compiled into a temporary directory
+ * that is removed afterwards.
+ */
+public class HelperGenerator
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( HelperGenerator.class );
+
+  // these names must match cascading.fluid.factory.ConcreteHelper and Reflection#getConcreteHelperName
+  public static final String CONCRETE_HELPER = "cascading.fluid.factory.ConcreteHelper";
+  public static final String HELPER_DISPATCHER = "cascading.fluid.factory.HelperDispatcher";
+  public static final String METHOD_DESCRIPTOR = "cascading.fluid.factory.MethodDescriptor";
+  public static final String HELPER_PACKAGE = "impl";
+  public static final String HELPER_SUFFIX = "Impl";
+
+  private final String targetPath;
+  private final String packageName;
+
+  public HelperGenerator( String targetPath, String packageName )
+    {
+    this.targetPath = targetPath;
+    this.packageName = packageName;
+    }
+
+  /**
+   * Generates concrete helpers for all helper interfaces reachable from the given root helper.
+   *
+   * @param rootHelper        binary name of the descriptor root helper interface
+   * @param childFactoryClass the factory type the root helper implementation creates un-annotated children with,
+   *                          or null if they have no super type
+   */
+  public void generateHelpers( String rootHelper, String childFactoryClass )
+    {
+    File classesDir = compileInterfaces();
+
+    if( classesDir == null )
+      return;
+
+    ClassLoader parent = Thread.currentThread().getContextClassLoader();
+    URLClassLoader classLoader = new URLClassLoader( new URL[]{toURL( classesDir )}, parent );
+
+    try
+      {
+      Class<?> root = classLoader.loadClass( rootHelper );
+      Class<?> childFactory = childFactoryClass == null ? null : Reflection.loadClass( childFactoryClass );
+
+      Map<Class<?>, Class<?>> superTypes = new LinkedHashMap<Class<?>, Class<?>>();
+      Set<Class<?>> conflicts = new HashSet<Class<?>>();
+
+      collectHelpers( root, childFactory, superTypes, conflicts );
+
+      Map<Class<?>, Path> paths = new HashMap<Class<?>, Path>();
+
+      collectPaths( root, null, paths );
+
+      Set<Class<?>> concrete = new LinkedHashSet<Class<?>>();
+
+      for( Class<?> helperType : superTypes.keySet() )
+        {
+        if( conflicts.contains( helperType ) )
+          LOG.info( "helper: {}, created with differing super types, leaving to proxy", helperType.getName() );
+        else if( helperType.getTypeParameters().length != 0 )
+          LOG.info( "helper: {}, is generic, leaving to proxy", helperType.getName() );
+        else
+          concrete.add( helperType );
+        }
+
+      File helperDir = new File( getPackageDir(), HELPER_PACKAGE );
+
+      helperDir.mkdirs();
+
+      for( Class<?> helperType : concrete )
+        {
+        Class<?> superType = superTypes.get( helperType );
+        Path path = superType.getName().equals( FACTORY ) ? paths.get( helperType ) : null;
+
+        writeHelper( helperDir, helperType, superType, path, concrete );
+        }
+
+      LOG.info( "wrote {} concrete helpers to: {}", concrete.size(), helperDir );
+      }
+    catch( ClassNotFoundException exception )
+      {
+      throw new IllegalStateException( "unable to load generated helper", exception );
+      }
+    finally
+      {
+      close( classLoader ); // releases the compiled interfaces before the next descriptor is generated
+      delete( classesDir );
+      }
+    }
+
+  private void collectHelpers( Class<?> type, Class<?> superType, Map<Class<?>, Class<?>> superTypes, Set<Class<?>> conflicts )
+    {
+    Class<? extends Annotation> metaType = Reflection.loadClass( METHOD_ANNOTATION );
+
+    for( Method method : type.getMethods() )
+      {
+      Annotation meta = method.getAnnotation( metaType );
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      Type[] genericTypes = method.getGenericParameterTypes();
+
+      for( int i = 0; i < parameterTypes.length; i++ )
+        {
+        if( parameterTypes[ i ] != AtomicReference.class )
+          continue;
+
+        Class<?> helperType = getReferencedType( genericTypes[ i ] );
+
+        if( helperType == null )
+          continue;
+
+        // mirrors the runtime, annotated methods name their factory, all others forward the current one
+        Class<?> childType = meta != null ? (Class<?>) getMetaValue( meta, "factory" ) : superType;
+        Class<?> key = childType == null ? Object.class : childType;
+        Class<?> prior = superTypes.get( helperType );
+
+        if( prior == null )
+          {
+          superTypes.put( helperType, key );
+          collectHelpers( helperType, childType, superTypes, conflicts );
+          }
+        else if( prior != key )
+          {
+          conflicts.add( helperType );
+          }
+        }
+      }
+    }
+
+  /**
+   * Collects the {@link Path} every helper is reached with, or null if it is reached with more than one or
+   * its prior factory is created on the next call.
+   */
+  private void collectPaths( Class<?> type, Path path, Map<Class<?>, Path> paths )
+    {
+    Class<? extends Annotation> metaType = Reflection.loadClass( METHOD_ANNOTATION );
+
+    for( Method method : type.getMethods() )
+      {
+      Annotation meta = method.getAnnotation( metaType );
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      Type[] genericTypes = method.getGenericParameterTypes();
+
+      for( int i = 0; i < parameterTypes.length; i++ )
+        {
+        if( parameterTypes[ i ] != AtomicReference.class )
+          continue;
+
+        Class<?> helperType = getReferencedType( genericTypes[ i ] );
+
+        if( helperType == null )
+          continue;
+
+        // mirrors the runtime, annotated methods start a new type, all others append to the current one
+        Path childPath;
+
+        if( meta == null )
+          childPath = path == null ? null : path.append( getArgumentTypes( method ) );
+        else if( (Boolean) getMetaValue( meta, "createOnNext" ) )
+          childPath = null;
+        else
+          childPath = new Path( (Class<?>) getMetaValue( meta, "creates" ), getArgumentTypes( method ) );
+
+        if( !paths.containsKey( helperType ) )
+          {
+          paths.put( helperType, childPath );
+          collectPaths( helperType, childPath, paths );
+          }
+        else if( paths.get( helperType ) != null && !paths.get( helperType ).equals( childPath ) )
+          {
+          paths.put( helperType, null );
+          collectPaths( helperType, null, paths ); // forgets the paths of all children reached through it
+          }
+        }
+      }
+    }
+
+  private void writeHelper( File helperDir, Class<?> helperType, Class<?> superType, Path path, Set<Class<?>> concrete )
+    {
+    String className = getHelperClassName( helperType );
+    List<Method> methods = getUnimplementedMethods( helperType, superType );
+
+    StringBuilder fields = new StringBuilder();
+    StringBuilder body = new StringBuilder();
+
+    for( int count = 0; count < methods.size(); count++ )
+      {
+      Method method = methods.get( count );
+      String descriptorName = "METHOD_" + count;
+      String typesName = "TYPES_" + count;
+
+      fields.append( "  private static final " ).append( METHOD_DESCRIPTOR ).append( " " ).append( descriptorName )
+        .append( " = " ).append( createDescriptor( method ) ).append( ";\n" );
+
+      boolean isAnnotated = method.getAnnotation( Reflection.loadClass( METHOD_ANNOTATION ) ) != null;
+      boolean isEnd = !isAnnotated && method.getParameterTypes().length == 0 && !method.getReturnType().isPrimitive();
+      Constructor<?> constructor = path == null || !isEnd ? null : path.getConstructor();
+      List<Class<?>> children = path == null || isAnnotated ? null : getConcreteChildren( method, concrete );
+
+      if( constructor != null )
+        {
+        appendField( fields, typesName, path.types );
+        appendCreateMethod( body, method, descriptorName, typesName, constructor );
+        }
+      else if( children != null )
+        {
+        appendField( fields, typesName, getArgumentTypes( method ) );
+        appendChildrenMethod( body, method, descriptorName, typesName, children );
+        }
+      else
+        {
+        appendMethod( body, method, descriptorName );
+        }
+      }
+
+    StringBuilder source = new StringBuilder();
+
+    source.append( "package " ).append( packageName ).append( "." ).append( HELPER_PACKAGE ).append( ";\n\n" );
+    source.append( "/**\n" );
+    source.append( " * Concrete implementation of {@link " ).append( helperType.getCanonicalName() ).append( "}.\n" );
+    source.append( " * <p/>\n" );
+    source.append( " * Generated by the Fluid generator, do not edit.\n" );
+    source.append( " */\n" );
+    source.append( "public class " ).append( className );
+
+    if( superType != Object.class )
+      source.append( " extends " ).append( superType.getCanonicalName() );
+
+    source.append( " implements " ).append( helperType.getCanonicalName() ).append( ", " ).append( CONCRETE_HELPER ).append( "\n" );
+    source.append( "  {\n" );
+    source.append( fields );
+    source.append( "\n" );
+    source.append( "  private " ).append( HELPER_DISPATCHER ).append( " dispatcher;\n\n" );
+    source.append( "  public " ).append( className ).append( "()\n    {\n    }\n\n" );
+    source.append( "  @Override\n" );
+    source.append( "  public void setDispatcher( " ).append( HELPER_DISPATCHER ).append( " dispatcher )\n" );
+    source.append( "    {\n    this.dispatcher = dispatcher;\n    }\n" );
+    source.append( body );
+    source.append( "  }\n" );
+
+    write( new File( helperDir, className + ".java" ), source );
+    }
+
+  private List<Method> getUnimplementedMethods( Class<?> helperType, Class<?> superType )
+    {
+    Map<String, Method> methods = new LinkedHashMap<String, Method>();
+
+    for( Method method : helperType.getMethods() )
+      {
+      if( Modifier.isStatic( method.getModifiers() ) )
+        continue;
+
+      String signature = method.getName() + Arrays.toString( method.getParameterTypes() );
+
+      if( methods.containsKey( signature ) || isImplemented( superType, method ) )
+        continue;
+
+      methods.put( signature, method );
+      }
+
+    return new ArrayList<Method>( methods.values() );
+    }
+
+  private boolean isImplemented( Class<?> superType, Method method )
+    {
+    try
+      {
+      Method implemented = superType.getMethod( method.getName(), method.getParameterTypes() );
+
+      return !Modifier.isAbstract( implemented.getModifiers() );
+      }
+    catch( NoSuchMethodException exception )
+      {
+      return false;
+      }
+    }
+
+  private String createDescriptor( Method method )
+    {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    Type[] genericTypes = method.getGenericParameterTypes();
+
+    List<String> types = new ArrayList<String>();
+    List<String> helpers = new ArrayList<String>();
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      types.add( toClassLiteral( parameterTypes[ i ] ) );
+
+      Class<?> helperType = parameterTypes[ i ] == AtomicReference.class ? getReferencedType( genericTypes[ i ] ) : null;
+
+      helpers.add( helperType == null ? "null" : toClassLiteral( helperType ) );
+      }
+
+    StringBuilder builder = new StringBuilder( "new " ).append( METHOD_DESCRIPTOR ).append( "( " )
+      .append( toStringLiteral( method.getName() ) ).append( ", " )
+      .append( "new Class[]{" ).append( Joiner.on( ", " ).join( types ) ).append( "}, " )
+      .append( "new Class[]{" ).append( Joiner.on( ", " ).join( helpers ) ).append( "}" );
+
+    Annotation meta = method.getAnnotation( Reflection.loadClass( METHOD_ANNOTATION ) );
+
+    if( meta != null )
+      {
+      builder
+        .append( ", " ).append( toClassLiteral( (Class<?>) getMetaValue( meta, "factory" ) ) )
+        .append( ", " ).append( toClassLiteral( (Class<?>) getMetaValue( meta, "creates" ) ) )
+        .append( ", " ).append( toStringLiteral( (String) getMetaValue( meta, "method" ) ) )
+        .append( ", " ).append( getMetaValue( meta, "createOnNext" ) );
+      }
+
+    return builder.append( " )" ).toString();
+    }
+
+  /** Returns the helper types created by the given un-annotated method if all have a concrete class, or null. */
+  private static List<Class<?>> getConcreteChildren( Method method, Set<Class<?>> concrete )
+    {
+    if( method.getReturnType() != void.class )
+      return null;
+
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    Type[] genericTypes = method.getGenericParameterTypes();
+    List<Class<?>> children = new ArrayList<Class<?>>();
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      if( parameterTypes[ i ] != AtomicReference.class )
+        continue;
+
+      Class<?> helperType = getReferencedType( genericTypes[ i ] );
+
+      if( !concrete.contains( helperType ) )
+        return null;
+
+      children.add( helperType );
+      }
+
+    return children.isEmpty() ? null : children;
+    }
+
+  private static List<Class<?>> getArgumentTypes( Method method )
+    {
+    List<Class<?>> types = new ArrayList<Class<?>>();
+
+    for( Class<?> parameterType : method.getParameterTypes() )
+      {
+      if( parameterType != AtomicReference.class )
+        types.add( parameterType );
+      }
+
+    return types;
+    }
+
+  private static void appendField( StringBuilder fields, String typesName, List<Class<?>> types )
+    {
+    List<String> literals = new ArrayList<String>();
+
+    for( Class<?> type : types )
+      literals.add( toClassLiteral( type ) );
+
+    fields.append( "  private static final Class[] " ).append( typesName )
+      .append( " = new Class[]{" ).append( Joiner.on( ", " ).join( literals ) ).append( "};\n" );
+    }
+
+  private void appendMethod( StringBuilder body, Method method, String descriptorName )
+    {
+    appendSignature( body, method );
+    appendDispatch( body, method, descriptorName, "    " );
+    body.append( "    }\n" );
+    }
+
+  /** Appends an end method calling the constructor directly, unless the dispatcher intercepts it. */
+  private void appendCreateMethod( StringBuilder body, Method method, String descriptorName, String typesName, Constructor<?> constructor )
+    {
+    Class<?>[] parameterTypes = constructor.getParameterTypes();
+    List<String> arguments = new ArrayList<String>();
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      String typeName = parameterTypes[ i ].isPrimitive() ? toWrapperName( parameterTypes[ i ] ) : toTypeName( parameterTypes[ i ] );
+
+      arguments.add( "(" + typeName + ") arguments[ " + i + " ]" );
+      }
+
+    String newInstance = "new " + toTypeName( constructor.getDeclaringClass() ) + ( arguments.isEmpty() ? "()" : "( " + Joiner.on( ", " ).join( arguments ) + " )" );
+
+    appendSignature( body, method );
+    body.append( "    if( dispatcher.isIntercepted( " ).append( descriptorName ).append( " ) )\n" );
+    appendDispatch( body, method, descriptorName, "      " );
+    body.append( "\n" );
+    body.append( "    Object[] arguments = getArguments();\n\n" );
+    body.append( "    return (" ).append( toTypeName( method.getGenericReturnType() ) ).append( ") created( " )
+      .append( newInstance ).append( ", " ).append( typesName ).append( ", arguments );\n" );
+    body.append( "    }\n" );
+    }
+
+  /** Appends a method creating its child helpers directly, unless the dispatcher intercepts it. */
+  private void appendChildrenMethod( StringBuilder body, Method method, String descriptorName, String typesName, List<Class<?>> children )
+    {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    List<String> arguments = new ArrayList<String>();
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      if( parameterTypes[ i ] != AtomicReference.class )
+        arguments.add( "arg" + i );
+      }
+
+    appendSignature( body, method );
+    body.append( "    if( dispatcher.isIntercepted( " ).append( descriptorName ).append( " ) )\n" );
+    body.append( "      {\n" );
+    appendDispatch( body, method, descriptorName, "      " );
+    body.append( "      return;\n" );
+    body.append( "      }\n" );
+
+    for( int i = 0, child = 0; i < parameterTypes.length; i++ )
+      {
+      if( parameterTypes[ i ] != AtomicReference.class )
+        continue;
+
+      String helperClass = packageName + "." + HELPER_PACKAGE + "." + getHelperClassName( children.get( child++ ) );
+      String helper = "helper" + i;
+
+      body.append( "\n" );
+      body.append( "    " ).append( helperClass ).append( " " ).append( helper ).append( " = new " ).append( helperClass ).append( "();\n\n" );
+      body.append( "    " ).append( helper ).append( ".setDispatcher( dispatcher );\n" );
+      body.append( "    " ).append( helper ).append( ".addPrior( this );\n" );
+      body.append( "    " ).append( helper ).append( ".addTypes( " ).append( typesName ).append( " );\n" );
+      body.append( "    " ).append( helper ).append( ".addArguments( new Object[]{" ).append( Joiner.on( ", " ).join( arguments ) ).append( "} );\n" );
+      body.append( "    arg" ).append( i ).append( ".set( " ).append( helper ).append( " );\n" );
+      }
+
+    body.append( "    }\n" );
+    }
+
+  private static void appendSignature( StringBuilder body, Method method )
+    {
+    Type[] genericTypes = method.getGenericParameterTypes();
+    List<String> parameters = new ArrayList<String>();
+
+    for( int i = 0; i < genericTypes.length; i++ )
+      {
+      String typeName = toTypeName( genericTypes[ i ] );
+
+      if( method.isVarArgs() && i == genericTypes.length - 1 )
+        typeName = typeName.substring( 0, typeName.length() - 2 ) + "...";
+
+      parameters.add( typeName + " arg" + i );
+      }
+
+    body.append( "\n" );
+    body.append( "  @Override\n" );
+    body.append( "  public " ).append( toTypeName( method.getGenericReturnType() ) ).append( " " ).append( method.getName() );
+    body.append( parameters.isEmpty() ? "()" : "( " + Joiner.on( ", " ).join( parameters ) + " )" ).append( "\n" );
+    body.append( "    {\n" );
+    }
+
+  private static void appendDispatch( StringBuilder body, Method method, String descriptorName, String indent )
+    {
+    List<String> arguments = new ArrayList<String>();
+
+    for( int i = 0; i < method.getParameterTypes().length; i++ )
+      arguments.add( "arg" + i );
+
+    Class<?> returnType = method.getReturnType();
+    String dispatch = "dispatcher.dispatch( this, " + descriptorName + ", new Object[]{" + Joiner.on( ", " ).join( arguments ) + "} )";
+
+    if( returnType == void.class )
+      body.append( indent ).append( dispatch ).append( ";\n" );
+    else if( returnType.isPrimitive() )
+      body.append( indent ).append( "return (" ).append( toWrapperName( returnType ) ).append( ") " ).append( dispatch ).append( ";\n" );
+    else
+      body.append( indent ).append( "return (" ).append( toTypeName( method.getGenericReturnType() ) ).append( ") " ).append( dispatch ).append( ";\n" );
+    }
+
+  private File compileInterfaces()
+    {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    if( compiler == null )
+      {
+      LOG.warn( "no system java compiler available, skipping concrete helpers for: {}", packageName );
+      return null;
+      }
+
+    File[] sources = getPackageDir().listFiles();
+
+    if( sources == null )
+      throw new IllegalStateException( "no generated sources found for: " + packageName );
+
+    List<File> files = new ArrayList<File>();
+
+    for( File source : sources )
+      {
+      if( source.isFile() && source.getName().endsWith( ".java" ) )
+        files.add( source );
+      }
+
+    File classesDir = createTempDir();
+
+    try
+      {
+      StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null );
+
+      try
+        {
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles( files );
+        List<String> options = Arrays.asList( "-d", classesDir.getPath(), "-classpath", getClasspath(), "-proc:none", "-nowarn" );
+
+        Boolean success = compiler.getTask( null, fileManager, null, options, null, units ).call();
+
+        if( success == null || !success )
+          throw new IllegalStateException( "unable to compile generated interfaces for: " + packageName );
+        }
+      finally
+        {
+        fileManager.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      delete( classesDir );
+      throw new IllegalStateException( "unable to compile generated interfaces for: " + packageName, exception );
+      }
+    catch( RuntimeException exception )
+      {
+      delete( classesDir );
+      throw exception;
+      }
+
+    return classesDir;
+    }
+
+  private String getClasspath()
+    {
+    Set<String> paths = new LinkedHashSet<String>();
+
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    if( classLoader instanceof ChildFirstURLClassLoader )
+      {
+      for( URL url : ( (ChildFirstURLClassLoader) classLoader ).getURLs() )
+        paths.add( new File( url.getPath() ).getPath() );
+      }
+
+    paths.addAll( Arrays.asList( System.getProperty( "java.class.path" ).split( File.pathSeparator ) ) );
+
+    return Joiner.on( File.pathSeparator ).join( paths );
+    }
+
+  private File getPackageDir()
+    {
+    return new File( targetPath, packageName.replace( '.', File.separatorChar ) );
+    }
+
+  static String getHelperClassName( Class<?> helperType )
+    {
+    String typeName = helperType.getName().substring( helperType.getPackage().getName().length() + 1 );
+
+    return typeName.replace( '$', '_' ) + HELPER_SUFFIX;
+    }
+
+  private static Class<?> getReferencedType( Type type )
+    {
+    if( !( type instanceof ParameterizedType ) )
+      return null;
+
+    Type argument = ( (ParameterizedType) type ).getActualTypeArguments()[ 0 ];
+
+    if( argument instanceof ParameterizedType )
+      argument = ( (ParameterizedType) argument ).getRawType();
+
+    return argument instanceof Class ? (Class<?>) argument : null;
+    }
+
+  private static Object getMetaValue( Annotation meta, String name )
+    {
+    try
+      {
+      return meta.annotationType().getMethod( name ).invoke( meta );
+      }
+    catch( Exception exception )
+      {
+      throw new IllegalStateException( "unable to read: " + name + ", from: " + meta, exception );
+      }
+    }
+
+  private static String toTypeName( Type type )
+    {
+    if( type instanceof Class )
+      {
+      Class<?> classType = (Class<?>) type;
+
+      if( classType.isArray() )
+        return toTypeName( classType.getComponentType() ) + "[]";
+
+      return classType.getCanonicalName();
+      }
+
+    if( type instanceof ParameterizedType )
+      {
+      ParameterizedType parameterizedType = (ParameterizedType) type;
+      List<String> arguments = new ArrayList<String>();
+
+      for( Type argument : parameterizedType.getActualTypeArguments() )
+        arguments.add( toTypeName( argument ) );
+
+      return toTypeName( parameterizedType.getRawType() ) + "<" + Joiner.on( ", " ).join( arguments ) + ">";
+      }
+
+    if( type instanceof GenericArrayType )
+      return toTypeName( ( (GenericArrayType) type ).getGenericComponentType() ) + "[]";
+
+    if( type instanceof WildcardType )
+      {
+      WildcardType wildcardType = (WildcardType) type;
+
+      if( wildcardType.getLowerBounds().length != 0 )
+        return "? super " + toTypeName( wildcardType.getLowerBounds()[ 0 ] );
+
+      if( wildcardType.getUpperBounds().length != 0 && wildcardType.getUpperBounds()[ 0 ] != Object.class )
+        return "? extends " + toTypeName( wildcardType.getUpperBounds()[ 0 ] );
+
+      return "?";
+      }
+
+    return type.toString();
+    }
+
+  private static String toClassLiteral( Class<?> type )
+    {
+    return toTypeName( type ) + ".class";
+    }
+
+  private static String toWrapperName( Class<?> type )
+    {
+    if( type == int.class )
+      return "Integer";
+
+    if( type == char.class )
+      return "Character";
+
+    String name = type.getName();
+
+    return Character.toUpperCase( name.charAt( 0 ) ) + name.substring( 1 );
+    }
+
+  private static String toStringLiteral( String value )
+    {
+    return "\"" + value.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ) + "\"";
+    }
+
+  private static void write( File file, CharSequence source )
+    {
+    try
+      {
+      Writer writer = new FileWriter( file );
+
+      try
+        {
+        writer.append( source );
+        }
+      finally
+        {
+        writer.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      throw new IllegalStateException( "unable to write: " + file, exception );
+      }
+    }
+
+  private static File createTempDir()
+    {
+    try
+      {
+      File dir = File.createTempFile( "fluid-helpers", "" );
+
+      if( !dir.delete() || !dir.mkdirs() )
+        throw new IOException( "unable to create directory: " + dir );
+
+      return dir;
+      }
+    catch( IOException exception )
+      {
+      throw new IllegalStateException( "unable to create temporary directory", exception );
+      }
+    }
+
+  private static void delete( File file )
+    {
+    File[] children = file.listFiles();
+
+    if( children != null )
+      {
+      for( File child : children )
+        delete( child );
+      }
+
+    if( !file.delete() )
+      LOG.debug( "unable to delete: {}", file );
+    }
+
+  private static void close( URLClassLoader classLoader )
+    {
+    try
+      {
+      classLoader.close();
+      }
+    catch( IOException exception )
+      {
+      LOG.debug( "unable to close classloader: {}", classLoader, exception );
+      }
+    }
+
+  /** The type a helper creates, and the constructor parameter types collected on the way to it. */
+  private static class Path
+    {
+    final Class<?> creates;
+    final List<Class<?>> types;
+
+    Path( Class<?> creates, List<Class<?>> types )
+      {
+      this.creates = creates;
+      this.types = types;
+      }
+
+    Path append( List<Class<?>> types )
+      {
+      List<Class<?>> appended = new ArrayList<Class<?>>( this.types );
+
+      appended.addAll( types );
+
+      return new Path( creates, appended );
+      }
+
+    /** Returns the public constructor accepting exactly the collected types, or null if there is none. */
+    Constructor<?> getConstructor()
+      {
+      if( !Modifier.isPublic( creates.getModifiers() ) || Modifier.isAbstract( creates.getModifiers() ) )
+        return null;
+
+      try
+        {
+        Constructor<?> constructor = creates.getConstructor( types.toArray( new Class[ types.size() ] ) );
+
+        return Modifier.isPublic( constructor.getModifiers() ) ? constructor : null;
+        }
+      catch( NoSuchMethodException exception )
+        {
+        return null;
+        }
+      }
+
+    @Override
+    public boolean equals( Object object )
+      {
+      if( this == object )
+        return true;
+
+      if( !( object instanceof Path ) )
+        return false;
+
+      Path path = (Path) object;
+
+      return creates == path.creates && types.equals( path.types );
+      }
+
+    @Override
+    public int hashCode()
+      {
+      return 31 * creates.hashCode() + types.hashCode();
+      }
+    }
+
+  private static URL toURL( File file )
+    {
+    try
+      {
+      return file.toURI().toURL();
+      }
+    catch( MalformedURLException exception )
+      {
+      throw new IllegalStateException( "could not create URL for: " + file, exception );
+      }
+    }
+  }
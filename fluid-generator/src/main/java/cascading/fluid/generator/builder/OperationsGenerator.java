@@ -20,6 +20,8 @@
 
 package cascading.fluid.generator.builder;
 
+import cascading.fluid.generator.util.TypeIndex;
+import cascading.fluid.generator.util.TypeSource;
 import cascading.operation.Aggregator;
 import cascading.operation.Buffer;
 import cascading.operation.Filter;
@@ -34,6 +36,9 @@ import unquietcode.tools.flapi.builder.Descriptor.DescriptorBuilder_2m1_4f_2m2_4
  */
 public class OperationsGenerator extends Generator
   {
+  public static final String PACKAGE_NAME = "cascading.fluid.api.operation";
+  public static final String DESCRIPTOR_NAME = "Operation";
+
   public OperationsGenerator()
     {
     }
@@ -43,11 +48,29 @@ public class OperationsGenerator extends Generator
     super( packages );
     }
 
+  public OperationsGenerator( TypeIndex typeIndex )
+    {
+    super( typeIndex );
+    }
+
+  public OperationsGenerator( TypeSource typeSource )
+    {
+    super( typeSource );
+    }
+
+  @Override
+  protected String[] getInputTypeNames()
+    {
+    return new String[]{"cascading.operation.Operation"};
+    }
+
   public void createOperationBuilder( String targetPath )
     {
+    String packageName = resolvePackage( getTargetPackage(), PACKAGE_NAME );
+
     DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder = getBuilder()
-      .setPackage( "cascading.fluid.api.operation" )
-      .setDescriptorName( "Operation" )
+      .setPackage( packageName )
+      .setDescriptorName( DESCRIPTOR_NAME )
       .setStartingMethodName( "build" );
 
     builder = addBuilderBlock( builder, Function.class, true, EACH, FACTORY, true );
@@ -60,6 +83,7 @@ public class OperationsGenerator extends Generator
     Descriptor build = builder.enableCondensedClassNames().build();
 
     writeBuilder( targetPath, build );
+    writeHelpers( targetPath, packageName, DESCRIPTOR_NAME, null );
     }
 
   }
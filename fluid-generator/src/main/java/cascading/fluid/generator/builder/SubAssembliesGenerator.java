@@ -20,6 +20,8 @@
 
 package cascading.fluid.generator.builder;
 
+import cascading.fluid.generator.util.TypeIndex;
+import cascading.fluid.generator.util.TypeSource;
 import cascading.pipe.assembly.AggregateBy;
 import unquietcode.tools.flapi.Descriptor;
 import unquietcode.tools.flapi.builder.Descriptor.DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f;
@@ -29,6 +31,9 @@ import unquietcode.tools.flapi.builder.Descriptor.DescriptorBuilder_2m1_4f_2m2_4
  */
 public class SubAssembliesGenerator extends Generator
   {
+  public static final String PACKAGE_NAME = "cascading.fluid.api.subassembly";
+  public static final String DESCRIPTOR_NAME = "SubAssembly";
+
   public SubAssembliesGenerator()
     {
     }
@@ -38,11 +43,29 @@ public class SubAssembliesGenerator extends Generator
     super( packages );
     }
 
+  public SubAssembliesGenerator( TypeIndex typeIndex )
+    {
+    super( typeIndex );
+    }
+
+  public SubAssembliesGenerator( TypeSource typeSource )
+    {
+    super( typeSource );
+    }
+
+  @Override
+  protected String[] getInputTypeNames()
+    {
+    return new String[]{"cascading.pipe.assembly.AggregateBy"};
+    }
+
   public void createOperationBuilder( String targetPath )
     {
+    String packageName = resolvePackage( getTargetPackage(), PACKAGE_NAME );
+
     DescriptorBuilder_2m1_4f_2m2_4f_2m3_4f_2m4_4f_2m7_4f_2m8_4f_2m10_4f_2m11_4f<Void> builder = getBuilder()
-      .setPackage( "cascading.fluid.api.subassembly" )
-      .setDescriptorName( "SubAssembly" )
+      .setPackage( packageName )
+      .setDescriptorName( DESCRIPTOR_NAME )
       .setStartingMethodName( "build" );
 
     builder = addBuilderBlock( builder, AggregateBy.class, true, AGGREGATE_BY, FACTORY, false );
@@ -50,6 +73,7 @@ public class SubAssembliesGenerator extends Generator
     Descriptor build = builder.enableCondensedClassNames().build();
 
     writeBuilder( targetPath, build );
+    writeHelpers( targetPath, packageName, DESCRIPTOR_NAME, null );
     }
 
   }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.processor;
+
+import java.beans.ConstructorProperties;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import cascading.fluid.generator.util.ConstructorSpec;
+import cascading.fluid.generator.util.TypeSource;
+import cascading.fluid.generator.util.TypeSpec;
+
+/**
+ * Class ElementTypeSource provides sub-types from the javac model of the types being compiled.
+ * <p/>
+ * No sub-type is loaded, the builders created for a sub-type return the requested super-type.
+ */
+class ElementTypeSource implements TypeSource
+  {
+  private static final String PIPE = "cascading.pipe.Pipe";
+
+  private final Elements elements;
+  private final Types types;
+  private final Map<String, TypeElement> typeElements = new TreeMap<String, TypeElement>();
+
+  ElementTypeSource( ProcessingEnvironment processingEnv, Collection<TypeElement> typeElements )
+    {
+    this.elements = processingEnv.getElementUtils();
+    this.types = processingEnv.getTypeUtils();
+
+    for( TypeElement typeElement : typeElements )
+      this.typeElements.put( typeElement.getQualifiedName().toString(), typeElement );
+    }
+
+  @Override
+  public Map<TypeSpec, Set<ConstructorSpec>> getInstantiableSubTypes( Class<?> type, boolean allConstructors )
+    {
+    TypeElement superElement = elements.getTypeElement( type.getCanonicalName() );
+
+    if( superElement == null )
+      return Collections.emptyMap();
+
+    TypeMirror superType = types.erasure( superElement.asType() );
+    Map<TypeSpec, Set<ConstructorSpec>> result = new LinkedHashMap<TypeSpec, Set<ConstructorSpec>>();
+
+    for( TypeElement typeElement : typeElements.values() )
+      {
+      if( !isInstantiable( typeElement ) || !types.isAssignable( types.erasure( typeElement.asType() ), superType ) )
+        continue;
+
+      Set<ConstructorSpec> constructors = getConstructors( typeElement, allConstructors );
+
+      if( constructors.isEmpty() )
+        continue;
+
+      TypeSpec typeSpec = new TypeSpec( typeElement.getQualifiedName().toString(), typeElement.getSimpleName().toString(), type );
+
+      result.put( typeSpec, constructors );
+      }
+
+    return result;
+    }
+
+  private boolean isInstantiable( TypeElement typeElement )
+    {
+    Set<Modifier> modifiers = typeElement.getModifiers();
+
+    return modifiers.contains( Modifier.PUBLIC ) && !modifiers.contains( Modifier.ABSTRACT ) && !elements.isDeprecated( typeElement );
+    }
+
+  private Set<ConstructorSpec> getConstructors( TypeElement typeElement, boolean allConstructors )
+    {
+    Set<ConstructorSpec> constructors = new LinkedHashSet<ConstructorSpec>();
+
+    for( ExecutableElement constructor : ElementFilter.constructorsIn( typeElement.getEnclosedElements() ) )
+      {
+      ConstructorProperties annotation = constructor.getAnnotation( ConstructorProperties.class );
+
+      if( annotation == null || !constructor.getModifiers().contains( Modifier.PUBLIC ) )
+        continue;
+
+      if( !allConstructors && hasPipeParameter( constructor ) )
+        continue;
+
+      List<? extends VariableElement> parameters = constructor.getParameters();
+      String[] parameterTypes = new String[ parameters.size() ];
+
+      for( int i = 0; i < parameters.size(); i++ )
+        parameterTypes[ i ] = types.erasure( parameters.get( i ).asType() ).toString();
+
+      constructors.add( new ConstructorSpec( typeElement.getQualifiedName().toString(), annotation.value(), parameterTypes, constructor.isVarArgs() ) );
+      }
+
+    return constructors;
+    }
+
+  private boolean hasPipeParameter( ExecutableElement constructor )
+    {
+    TypeElement pipeElement = elements.getTypeElement( PIPE );
+
+    if( pipeElement == null )
+      return false;
+
+    TypeMirror pipeType = pipeElement.asType();
+
+    for( VariableElement parameter : constructor.getParameters() )
+      {
+      TypeMirror parameterType = parameter.asType();
+
+      if( parameterType.getKind() == TypeKind.ARRAY )
+        parameterType = ( (ArrayType) parameterType ).getComponentType();
+
+      if( types.isAssignable( types.erasure( parameterType ), pipeType ) )
+        return true;
+      }
+
+    return false;
+    }
+  }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.processor;
+
+import java.beans.ConstructorProperties;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import cascading.fluid.generator.builder.OperationsGenerator;
+import cascading.fluid.generator.builder.SubAssembliesGenerator;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+
+/**
+ * Class FluidProcessor generates the Fluid operation and sub-assembly builders for the operation classes being
+ * compiled, during normal compilation.
+ * <p/>
+ * Constructors annotated with {@link ConstructorProperties} are read from the javac model, no class being compiled
+ * is loaded. The processor is only active if the {@code fluid.targetPackage} option is given, e.g.
+ * {@code -Afluid.targetPackage=com.example.fluid}, the optional {@code fluid.packages} option limits the
+ * operation classes to the given comma separated packages.
+ * <p/>
+ * Builders are generated in the first round any operation class is found, concrete helpers are not generated
+ * so the builders fall back to runtime proxies. As an incremental compile only presents the recompiled classes, the
+ * already compiled operation classes of the configured packages, and of the {@link #INDEX} written by the last
+ * compile, are included as well.
+ */
+@SupportedAnnotationTypes("java.beans.ConstructorProperties")
+@SupportedOptions({FluidProcessor.TARGET_PACKAGE, FluidProcessor.PACKAGES})
+public class FluidProcessor extends AbstractProcessor
+  {
+  public static final String TARGET_PACKAGE = "fluid.targetPackage";
+  public static final String PACKAGES = "fluid.packages";
+
+  /** The class output resource listing every operation type builders were last generated for. */
+  static final String INDEX = "META-INF/fluid/operations.index";
+
+  private boolean generated = false;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion()
+    {
+    return SourceVersion.latestSupported();
+    }
+
+  @Override
+  public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv )
+    {
+    String targetPackage = processingEnv.getOptions().get( TARGET_PACKAGE );
+
+    if( targetPackage == null || generated || roundEnv.processingOver() )
+      return false;
+
+    Map<String, TypeElement> typeElements = new LinkedHashMap<String, TypeElement>();
+
+    for( Element element : roundEnv.getElementsAnnotatedWith( ConstructorProperties.class ) )
+      {
+      if( element.getKind() != ElementKind.CONSTRUCTOR )
+        continue;
+
+      TypeElement typeElement = (TypeElement) element.getEnclosingElement();
+
+      if( isIncluded( typeElement ) )
+        typeElements.put( typeElement.getQualifiedName().toString(), typeElement );
+      }
+
+    if( typeElements.isEmpty() )
+      return false;
+
+    // an incremental compile only hands over the recompiled types, so add those already compiled
+    addCompiledTypes( typeElements );
+
+    generated = true;
+
+    try
+      {
+      generate( targetPackage, new ArrayList<TypeElement>( typeElements.values() ) );
+      writeIndex( typeElements.keySet() );
+      }
+    catch( RuntimeException exception )
+      {
+      processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "unable to generate fluid api: " + exception );
+      }
+    catch( IOException exception )
+      {
+      processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, "unable to write fluid api: " + exception );
+      }
+
+    return false; // other processors may also claim ConstructorProperties
+    }
+
+  /**
+   * Adds every operation type in the configured packages, and every type listed in the index written by the last
+   * compile that is still present, as packages given to the compiler model do not enumerate their sub-packages.
+   */
+  private void addCompiledTypes( Map<String, TypeElement> typeElements )
+    {
+    Elements elements = processingEnv.getElementUtils();
+
+    for( String name : getPackages() )
+      {
+      PackageElement packageElement = elements.getPackageElement( name );
+
+      if( packageElement == null )
+        continue;
+
+      for( TypeElement typeElement : ElementFilter.typesIn( packageElement.getEnclosedElements() ) )
+        addCompiledType( typeElements, typeElement );
+      }
+
+    for( String name : readIndex() )
+      {
+      if( !typeElements.containsKey( name ) )
+        addCompiledType( typeElements, elements.getTypeElement( name ) );
+      }
+    }
+
+  private void addCompiledType( Map<String, TypeElement> typeElements, TypeElement typeElement )
+    {
+    if( typeElement == null || !isIncluded( typeElement ) || !hasConstructorProperties( typeElement ) )
+      return;
+
+    String name = typeElement.getQualifiedName().toString();
+
+    if( !typeElements.containsKey( name ) )
+      typeElements.put( name, typeElement );
+    }
+
+  private static boolean hasConstructorProperties( TypeElement typeElement )
+    {
+    for( ExecutableElement constructor : ElementFilter.constructorsIn( typeElement.getEnclosedElements() ) )
+      {
+      if( constructor.getAnnotation( ConstructorProperties.class ) != null )
+        return true;
+      }
+
+    return false;
+    }
+
+  private List<String> readIndex()
+    {
+    try
+      {
+      FileObject index = processingEnv.getFiler().getResource( StandardLocation.CLASS_OUTPUT, "", INDEX );
+
+      return Splitter.on( '\n' ).trimResults().omitEmptyStrings().splitToList( index.getCharContent( true ) );
+      }
+    catch( IOException exception )
+      {
+      return Collections.emptyList(); // a clean compile has no index
+      }
+    catch( IllegalArgumentException exception )
+      {
+      return Collections.emptyList();
+      }
+    }
+
+  private void writeIndex( Set<String> names ) throws IOException
+    {
+    FileObject index = processingEnv.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", INDEX );
+    Writer writer = index.openWriter();
+
+    try
+      {
+      for( String name : names )
+        writer.write( name + "\n" );
+      }
+    finally
+      {
+      writer.close();
+      }
+    }
+
+  private Iterable<String> getPackages()
+    {
+    String packages = processingEnv.getOptions().get( PACKAGES );
+
+    if( packages == null )
+      return Collections.emptyList();
+
+    return Splitter.on( ',' ).trimResults().omitEmptyStrings().split( packages );
+    }
+
+  private boolean isIncluded( TypeElement typeElement )
+    {
+    if( processingEnv.getOptions().get( PACKAGES ) == null )
+      return true;
+
+    String name = processingEnv.getElementUtils().getPackageOf( typeElement ).getQualifiedName().toString();
+
+    for( String prefix : getPackages() )
+      {
+      if( name.equals( prefix ) || name.startsWith( prefix + "." ) )
+        return true;
+      }
+
+    return false;
+    }
+
+  private void generate( String targetPackage, List<TypeElement> typeElements ) throws IOException
+    {
+    ElementTypeSource typeSource = new ElementTypeSource( processingEnv, typeElements );
+    File outputDir = Files.createTempDir();
+
+    try
+      {
+      OperationsGenerator operations = new OperationsGenerator( typeSource );
+
+      operations.setTargetPackage( targetPackage );
+      operations.setEnableConcreteHelpers( false );
+      operations.createOperationBuilder( outputDir.getPath() );
+
+      SubAssembliesGenerator subAssemblies = new SubAssembliesGenerator( typeSource );
+
+      subAssemblies.setTargetPackage( targetPackage );
+      subAssemblies.setEnableConcreteHelpers( false );
+      subAssemblies.createOperationBuilder( outputDir.getPath() );
+
+      Element[] originatingElements = typeElements.toArray( new Element[ typeElements.size() ] );
+
+      writeSources( outputDir, outputDir, originatingElements );
+      }
+    finally
+      {
+      delete( outputDir );
+      }
+    }
+
+  private void writeSources( File root, File dir, Element[] originatingElements ) throws IOException
+    {
+    File[] files = dir.listFiles();
+
+    if( files == null )
+      return;
+
+    for( File file : files )
+      {
+      if( file.isDirectory() )
+        {
+        writeSources( root, file, originatingElements );
+        continue;
+        }
+
+      if( !file.getName().endsWith( ".java" ) )
+        continue;
+
+      String path = root.toURI().relativize( file.toURI() ).getPath();
+      String className = path.substring( 0, path.length() - ".java".length() ).replace( '/', '.' );
+
+      JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile( className, originatingElements );
+      Writer writer = sourceFile.openWriter();
+
+      try
+        {
+        writer.write( Files.toString( file, Charsets.UTF_8 ) );
+        }
+      finally
+        {
+        writer.close();
+        }
+      }
+    }
+
+  private static void delete( File file )
+    {
+    File[] children = file.listFiles();
+
+    if( children != null )
+      {
+      for( File child : children )
+        delete( child );
+      }
+
+    file.delete();
+    }
+  }
@@ -84,6 +84,11 @@ public class ChildFirstURLClassLoader extends ClassLoader
       LOG.debug( "child first classloader exclusions: {}", Arrays.toString( exclusions ) );
     }
 
+  public URL[] getURLs()
+    {
+    return childClassLoader.getURLs();
+    }
+
   @Override
   protected synchronized Class<?> loadClass( String name, boolean resolve ) throws ClassNotFoundException
     {
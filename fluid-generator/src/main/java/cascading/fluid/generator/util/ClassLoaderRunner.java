@@ -21,7 +21,6 @@
 package cascading.fluid.generator.util;
 
 import java.io.File;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
@@ -40,16 +39,24 @@ public class ClassLoaderRunner
   {
   private static final Logger LOG = LoggerFactory.getLogger( ClassLoaderRunner.class );
 
-  public static void runViaClassLoader( String classpath, String className, String outputPath )
+  public static Set<File> toFiles( String classpath )
     {
     String[] paths = classpath.split( File.pathSeparator );
 
     Set<File> files = new LinkedHashSet<File>();
 
     for( String path : paths )
-      files.add( new File( path ) );
+      {
+      if( !path.isEmpty() )
+        files.add( new File( path ) );
+      }
+
+    return files;
+    }
 
-    runViaClassLoader( files, className, outputPath );
+  public static void runViaClassLoader( String classpath, String className, String outputPath )
+    {
+    runViaClassLoader( toFiles( classpath ), className, outputPath );
     }
 
   public static void runViaClassLoader( Set<File> files, String className, String outputPath )
@@ -58,6 +65,15 @@ public class ClassLoaderRunner
     }
 
   public static void runViaClassLoader( Set<File> files, String className, File outputPath )
+    {
+    runViaClassLoader( files, className, outputPath, null );
+    }
+
+  /**
+   * Runs the {@code execute()} method of the given class within a child first class loader over the given files.
+   * The class is constructed with the output path, and the given arguments if not null.
+   */
+  public static void runViaClassLoader( Set<File> files, String className, File outputPath, String[] arguments )
     {
     URL[] urls = new URL[ files.size() ];
 
@@ -70,10 +86,10 @@ public class ClassLoaderRunner
 
     ChildFirstURLClassLoader urlClassLoader = new ChildFirstURLClassLoader( urls );
 
-    invoke( urlClassLoader, className, outputPath );
+    invoke( urlClassLoader, className, outputPath, arguments );
     }
 
-  private static void invoke( ChildFirstURLClassLoader urlClassLoader, String className, File outputPath )
+  private static void invoke( ChildFirstURLClassLoader urlClassLoader, String className, File outputPath, String[] arguments )
     {
     ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
 
@@ -83,9 +99,12 @@ public class ClassLoaderRunner
 
       Class<?> type = urlClassLoader.loadClass( className );
 
-      Constructor<?> constructor = type.getConstructor( File.class );
+      Object value;
 
-      Object value = constructor.newInstance( outputPath );
+      if( arguments == null )
+        value = type.getConstructor( File.class ).newInstance( outputPath );
+      else
+        value = type.getConstructor( File.class, String[].class ).newInstance( outputPath, arguments );
 
       Method method = type.getMethod( "execute" );
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Class ConstructorSpec describes a {@link ConstructorProperties} annotated constructor by name only, so the
+ * parameter graph may be created from reflection or from the javac model alike.
+ * <p/>
+ * Parameter types are source type names, arrays end with {@code []}.
+ */
+public class ConstructorSpec
+  {
+  private final String declaringType;
+  private final String[] properties;
+  private final String[] parameterTypes;
+  private final boolean varArgs;
+
+  public static Set<ConstructorSpec> of( Set<Constructor> constructors )
+    {
+    Set<ConstructorSpec> specs = new LinkedHashSet<ConstructorSpec>();
+
+    for( Constructor constructor : constructors )
+      specs.add( of( constructor ) );
+
+    return specs;
+    }
+
+  public static ConstructorSpec of( Constructor constructor )
+    {
+    ConstructorProperties annotation = (ConstructorProperties) constructor.getAnnotation( ConstructorProperties.class );
+
+    return new ConstructorSpec( constructor.getDeclaringClass().getName(), annotation.value(), toNames( constructor.getParameterTypes() ), constructor.isVarArgs() );
+    }
+
+  public static String[] toNames( Class... types )
+    {
+    String[] names = new String[ types.length ];
+
+    for( int i = 0; i < types.length; i++ )
+      names[ i ] = types[ i ].getCanonicalName();
+
+    return names;
+    }
+
+  public static boolean isArray( String typeName )
+    {
+    return typeName.endsWith( "[]" );
+    }
+
+  public static String getComponentType( String typeName )
+    {
+    return typeName.substring( 0, typeName.length() - 2 );
+    }
+
+  public ConstructorSpec( String declaringType, String[] properties, String[] parameterTypes, boolean varArgs )
+    {
+    this.declaringType = declaringType;
+    this.properties = properties;
+    this.parameterTypes = parameterTypes;
+    this.varArgs = varArgs;
+    }
+
+  public String getDeclaringType()
+    {
+    return declaringType;
+    }
+
+  public String[] getProperties()
+    {
+    return properties;
+    }
+
+  public String[] getParameterTypes()
+    {
+    return parameterTypes;
+    }
+
+  public boolean isVarArgs()
+    {
+    return varArgs;
+    }
+
+  @Override
+  public String toString()
+    {
+    final StringBuilder sb = new StringBuilder( "ConstructorSpec{" );
+    sb.append( "declaringType=" ).append( declaringType );
+    sb.append( ", properties=" ).append( Arrays.toString( properties ) );
+    sb.append( ", parameterTypes=" ).append( Arrays.toString( parameterTypes ) );
+    sb.append( ", varArgs=" ).append( varArgs );
+    sb.append( '}' );
+    return sb.toString();
+    }
+  }
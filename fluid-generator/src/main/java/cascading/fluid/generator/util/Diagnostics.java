@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.google.common.base.Charsets;
+import org.jgrapht.DirectedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class Diagnostics streams a single report of every type a generator created a builder for.
+ * <p/>
+ * Each entry in {@link #REPORT_FILE} holds its index, the generator, the type, the builder method, the size of the
+ * parameter graph, the number of generated methods and the time taken. If enabled, every parameter graph is also
+ * appended to the {@link #DOT_FILE} bundle, in index order.
+ * <p/>
+ * Diagnostics are opt-in, generators do no diagnostic I/O without an instance. An instance may be shared by
+ * generators running concurrently.
+ */
+public final class Diagnostics implements Closeable
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( Diagnostics.class );
+
+  public static final String REPORT_FILE = "fluid-diagnostics.json";
+  public static final String DOT_FILE = "fluid-graphs.dot";
+
+  private final File directory;
+  private final Writer report;
+  private final Writer dot;
+
+  private int count;
+  private long vertices;
+  private long edges;
+  private long methods;
+  private long nanos;
+  private boolean closed;
+
+  /**
+   * Method open creates the given directory and starts a new report within it.
+   *
+   * @param directory the directory to write the report to
+   * @param writeDOT  if true, all parameter graphs are written to a single DOT bundle
+   */
+  public static Diagnostics open( File directory, boolean writeDOT )
+    {
+    directory.mkdirs();
+
+    Writer report = createWriter( new File( directory, REPORT_FILE ) );
+    Writer dot = null;
+
+    try
+      {
+      if( writeDOT )
+        dot = createWriter( new File( directory, DOT_FILE ) );
+
+      report.write( "{\n\"types\": [" );
+      }
+    catch( IOException exception )
+      {
+      closeQuietly( report );
+      throw new RuntimeException( "unable to write diagnostics: " + directory, exception );
+      }
+    catch( RuntimeException exception )
+      {
+      closeQuietly( report );
+      throw exception;
+      }
+
+    return new Diagnostics( directory, report, dot );
+    }
+
+  private static Writer createWriter( File file )
+    {
+    try
+      {
+      return new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), Charsets.UTF_8 ) );
+      }
+    catch( IOException exception )
+      {
+      throw new RuntimeException( "unable to write diagnostics: " + file, exception );
+      }
+    }
+
+  private static void closeQuietly( Writer writer )
+    {
+    if( writer == null )
+      return;
+
+    try
+      {
+      writer.close();
+      }
+    catch( IOException exception )
+      {
+      LOG.debug( "unable to close diagnostics writer", exception );
+      }
+    }
+
+  private Diagnostics( File directory, Writer report, Writer dot )
+    {
+    this.directory = directory;
+    this.report = report;
+    this.dot = dot;
+    }
+
+  public File getDirectory()
+    {
+    return directory;
+    }
+
+  /**
+   * Method record appends a single type entry to the report, and its graph to the DOT bundle if enabled.
+   *
+   * @param generator the generator creating the builder
+   * @param type      the name of the type created by the builder
+   * @param method    the builder method signature
+   * @param graph     the parameter graph of the type
+   * @param methods   the number of methods generated for the type
+   * @param nanos     the time taken to generate the type
+   */
+  public synchronized void record( String generator, String type, String method, DirectedGraph<Prefix<Integer, String, String>, Integer> graph, int methods, long nanos )
+    {
+    if( closed ) // a failed descriptor closes the report while others may still be running
+      return;
+
+    int index = count++;
+    int vertexCount = graph.vertexSet().size() - 2; // excludes BEGIN and END
+    int edgeCount = graph.edgeSet().size();
+
+    this.vertices += vertexCount;
+    this.edges += edgeCount;
+    this.methods += methods;
+    this.nanos += nanos;
+
+    try
+      {
+      report.write( index == 0 ? "\n" : ",\n" );
+      report.write( "  {\"index\": " + index );
+      report.write( ", \"generator\": " + quote( generator ) );
+      report.write( ", \"type\": " + quote( type ) );
+      report.write( ", \"method\": " + quote( method ) );
+      report.write( ", \"vertices\": " + vertexCount );
+      report.write( ", \"edges\": " + edgeCount );
+      report.write( ", \"methods\": " + methods );
+      report.write( ", \"nanos\": " + nanos );
+      report.write( ", \"dot\": " + ( dot != null ) + "}" );
+
+      if( dot != null )
+        {
+        dot.write( "// " + index + " " + type + "\n" );
+        ParameterGraphs.writeDOT( graph, dot );
+        }
+      }
+    catch( IOException exception )
+      {
+      throw new RuntimeException( "unable to write diagnostics: " + directory, exception );
+      }
+    }
+
+  /** Method close writes the report summary and closes the report and DOT bundle. */
+  @Override
+  public synchronized void close()
+    {
+    if( closed )
+      return;
+
+    closed = true;
+
+    try
+      {
+      report.write( "\n],\n\"summary\": {" );
+      report.write( "\"types\": " + count );
+      report.write( ", \"vertices\": " + vertices );
+      report.write( ", \"edges\": " + edges );
+      report.write( ", \"methods\": " + methods );
+      report.write( ", \"nanos\": " + nanos );
+      report.write( "}\n}\n" );
+      }
+    catch( IOException exception )
+      {
+      throw new RuntimeException( "unable to write diagnostics: " + directory, exception );
+      }
+    finally
+      {
+      closeQuietly( report );
+      closeQuietly( dot );
+      }
+
+    LOG.info( "wrote diagnostics for {} types to: {}", count, directory );
+    }
+
+  static String quote( String value )
+    {
+    if( value == null )
+      return "null";
+
+    StringBuilder builder = new StringBuilder( value.length() + 2 ).append( '"' );
+
+    for( int i = 0; i < value.length(); i++ )
+      {
+      char c = value.charAt( i );
+
+      switch( c )
+        {
+        case '"':
+          builder.append( "\\\"" );
+          break;
+        case '\\':
+          builder.append( "\\\\" );
+          break;
+        case '\n':
+          builder.append( "\\n" );
+          break;
+        case '\r':
+          builder.append( "\\r" );
+          break;
+        case '\t':
+          builder.append( "\\t" );
+          break;
+        default:
+          if( c < 0x20 )
+            builder.append( String.format( "\\u%04x", (int) c ) );
+          else
+            builder.append( c );
+        }
+      }
+
+    return builder.append( '"' ).toString();
+    }
+  }
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class Fingerprint records the state of the generator and its input classpath when an api was last generated.
+ * <p/>
+ * Each classpath entry is stamped by its length and last modified time, directories by the sum of their files.
+ * Every generated descriptor also records the classpath entries supplying its input types, so only descriptors
+ * whose inputs changed need be regenerated.
+ */
+public class Fingerprint
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( Fingerprint.class );
+
+  public static final String FILE_NAME = ".fluid-fingerprint.properties";
+
+  private static final String GENERATOR = "generator";
+  private static final String ENTRY = "entry.";
+  private static final String DESCRIPTOR = "descriptor.";
+
+  private final String generator;
+  private final Map<String, String> entries;
+  private final Map<String, Set<String>> descriptors = new TreeMap<String, Set<String>>();
+
+  /**
+   * Method compute returns the Fingerprint of the current generator and the given input classpath.
+   *
+   * @param classpath the input classpath entries
+   * @return a new Fingerprint
+   */
+  public static Fingerprint compute( Collection<File> classpath )
+    {
+    return compute( classpath, Collections.<String>emptyList() );
+    }
+
+  /**
+   * Method compute returns the Fingerprint of the current generator, its options, and the given input classpath.
+   *
+   * @param classpath the input classpath entries
+   * @param options   the generator options, any change makes all descriptors stale
+   * @return a new Fingerprint
+   */
+  public static Fingerprint compute( Collection<File> classpath, Collection<String> options )
+    {
+    Map<String, String> generatorEntries = new TreeMap<String, String>();
+
+    for( String path : System.getProperty( "java.class.path", "" ).split( File.pathSeparator ) )
+      stamp( generatorEntries, new File( path ) );
+
+    File generatorLocation = getLocation( Fingerprint.class );
+
+    if( generatorLocation != null )
+      stamp( generatorEntries, generatorLocation );
+
+    Map<String, String> entries = new TreeMap<String, String>();
+
+    for( File file : classpath )
+      stamp( entries, file );
+
+    String generator = Joiner.on( ',' ).withKeyValueSeparator( "=" ).join( generatorEntries );
+
+    if( !options.isEmpty() )
+      generator += "," + Joiner.on( ',' ).join( options );
+
+    return new Fingerprint( Hashing.md5().hashString( generator, Charsets.UTF_8 ).toString(), entries );
+    }
+
+  /**
+   * Method read returns the Fingerprint written to the given output path, if any.
+   *
+   * @param outputPath the generated api output path
+   * @return the prior Fingerprint, or null if none or unreadable
+   */
+  public static Fingerprint read( File outputPath )
+    {
+    File file = new File( outputPath, FILE_NAME );
+
+    if( !file.exists() )
+      return null;
+
+    Properties properties = new Properties();
+
+    try
+      {
+      InputStream inputStream = new FileInputStream( file );
+
+      try
+        {
+        properties.load( inputStream );
+        }
+      finally
+        {
+        inputStream.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      LOG.warn( "unable to read fingerprint: {}", file, exception );
+      return null;
+      }
+
+    Map<String, String> entries = new TreeMap<String, String>();
+
+    for( String name : properties.stringPropertyNames() )
+      {
+      if( name.startsWith( ENTRY ) )
+        entries.put( name.substring( ENTRY.length() ), properties.getProperty( name ) );
+      }
+
+    Fingerprint fingerprint = new Fingerprint( properties.getProperty( GENERATOR ), entries );
+
+    for( String name : properties.stringPropertyNames() )
+      {
+      if( name.startsWith( DESCRIPTOR ) )
+        fingerprint.setInputLocations( name.substring( DESCRIPTOR.length() ), Splitter.on( File.pathSeparator ).omitEmptyStrings().split( properties.getProperty( name ) ) );
+      }
+
+    return fingerprint;
+    }
+
+  /**
+   * Method getLocation returns the classpath entry the given type was loaded from.
+   *
+   * @return the jar or directory, or null if not known
+   */
+  public static File getLocation( Class<?> type )
+    {
+    CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+
+    if( codeSource == null || codeSource.getLocation() == null )
+      return null;
+
+    URL location = codeSource.getLocation();
+
+    try
+      {
+      return new File( location.toURI() ).getAbsoluteFile();
+      }
+    catch( URISyntaxException exception )
+      {
+      return new File( location.getPath() ).getAbsoluteFile();
+      }
+    catch( IllegalArgumentException exception )
+      {
+      return null; // not a file
+      }
+    }
+
+  private static void stamp( Map<String, String> entries, File file )
+    {
+    if( file.getPath().isEmpty() )
+      return;
+
+    File absolute = file.getAbsoluteFile();
+
+    if( !absolute.exists() )
+      {
+      entries.put( absolute.getPath(), "missing" );
+      return;
+      }
+
+    long[] stamp = new long[ 3 ]; // files, length, last modified
+
+    stamp( absolute, stamp );
+
+    entries.put( absolute.getPath(), stamp[ 0 ] + ":" + stamp[ 1 ] + ":" + stamp[ 2 ] );
+    }
+
+  private static void stamp( File file, long[] stamp )
+    {
+    if( file.isDirectory() )
+      {
+      File[] children = file.listFiles();
+
+      if( children != null )
+        {
+        for( File child : children )
+          stamp( child, stamp );
+        }
+
+      return;
+      }
+
+    stamp[ 0 ]++;
+    stamp[ 1 ] += file.length();
+    stamp[ 2 ] = Math.max( stamp[ 2 ], file.lastModified() );
+    }
+
+  private Fingerprint( String generator, Map<String, String> entries )
+    {
+    this.generator = generator;
+    this.entries = entries;
+    }
+
+  public Set<String> getInputLocations( String descriptor )
+    {
+    Set<String> locations = descriptors.get( descriptor );
+
+    return locations == null ? null : Collections.unmodifiableSet( locations );
+    }
+
+  public void setInputLocations( String descriptor, Iterable<String> locations )
+    {
+    Set<String> values = new TreeSet<String>();
+
+    for( String location : locations )
+      values.add( location );
+
+    descriptors.put( descriptor, values );
+    }
+
+  /**
+   * Method getStaleDescriptors returns those of the given descriptors that must be regenerated, given the
+   * prior Fingerprint.
+   * <p/>
+   * All descriptors are stale if there is no prior Fingerprint, the generator changed, or a classpath entry was
+   * added or removed. Otherwise only descriptors with an input location whose stamp changed are stale.
+   *
+   * @param prior       the prior Fingerprint, may be null
+   * @param descriptors the names of all descriptors
+   * @return the stale descriptor names, empty if nothing changed
+   */
+  public Set<String> getStaleDescriptors( Fingerprint prior, Collection<String> descriptors )
+    {
+    if( prior == null || !generator.equals( prior.generator ) || !entries.keySet().equals( prior.entries.keySet() ) )
+      return new LinkedHashSet<String>( descriptors );
+
+    Set<String> changed = new TreeSet<String>();
+
+    for( Map.Entry<String, String> entry : entries.entrySet() )
+      {
+      if( !entry.getValue().equals( prior.entries.get( entry.getKey() ) ) )
+        changed.add( entry.getKey() );
+      }
+
+    Set<String> stale = new LinkedHashSet<String>();
+
+    for( String descriptor : descriptors )
+      {
+      Set<String> locations = prior.descriptors.get( descriptor );
+
+      if( locations == null || !Collections.disjoint( locations, changed ) )
+        stale.add( descriptor );
+      }
+
+    if( !changed.isEmpty() )
+      LOG.info( "changed classpath entries: {}, stale descriptors: {}", changed, stale );
+
+    return stale;
+    }
+
+  /**
+   * Method inheritInputLocations copies the input locations of any descriptor not generated in this run
+   * from the prior Fingerprint.
+   */
+  public void inheritInputLocations( Fingerprint prior )
+    {
+    if( prior == null )
+      return;
+
+    for( Map.Entry<String, Set<String>> entry : prior.descriptors.entrySet() )
+      {
+      if( !descriptors.containsKey( entry.getKey() ) )
+        descriptors.put( entry.getKey(), new TreeSet<String>( entry.getValue() ) );
+      }
+    }
+
+  public void write( File outputPath )
+    {
+    Properties properties = new Properties();
+
+    properties.setProperty( GENERATOR, generator );
+
+    for( Map.Entry<String, String> entry : entries.entrySet() )
+      properties.setProperty( ENTRY + entry.getKey(), entry.getValue() );
+
+    for( Map.Entry<String, Set<String>> entry : descriptors.entrySet() )
+      properties.setProperty( DESCRIPTOR + entry.getKey(), Joiner.on( File.pathSeparator ).join( entry.getValue() ) );
+
+    outputPath.mkdirs();
+
+    File file = new File( outputPath, FILE_NAME );
+
+    try
+      {
+      OutputStream outputStream = new FileOutputStream( file );
+
+      try
+        {
+        properties.store( outputStream, "fluid generator fingerprint, delete to force regeneration" );
+        }
+      finally
+        {
+        outputStream.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      throw new RuntimeException( "unable to write fingerprint: " + file, exception );
+      }
+    }
+  }
@@ -20,13 +20,16 @@
 
 package cascading.fluid.generator.util;
 
-import java.beans.ConstructorProperties;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Joiner;
@@ -47,37 +50,58 @@ public class ParameterGraphs
   {
   private static final Logger LOG = LoggerFactory.getLogger( ParameterGraphs.class );
 
-  public static final Prefix<String, String, Class> BEGIN = new Prefix<String, String, Class>( "BEGIN" );
-  public static final Prefix<String, String, Class> END = new Prefix<String, String, Class>( "END" );
+  private static final int BEGIN_ID = 0;
+  private static final int END_ID = -1;
 
-  public static DirectedGraph<Prefix<String, String, Class>, Integer> createParameterGraph( Set<Constructor> constructors, boolean trackPath, Class... startsWithExclusive )
+  public static final Prefix<Integer, String, String> BEGIN = new Prefix<Integer, String, String>( BEGIN_ID );
+  public static final Prefix<Integer, String, String> END = new Prefix<Integer, String, String>( END_ID );
+
+  /**
+   * Method createParameterGraph returns a graph of every constructor parameter list, from {@link #BEGIN} to {@link #END}.
+   * <p/>
+   * If trackPath is true, each vertex is prefixed with the integer id of the path leading to it, so the graph
+   * is a tree of shared parameter prefixes.
+   */
+  public static DirectedGraph<Prefix<Integer, String, String>, Integer> createParameterGraph( Set<Constructor> constructors, boolean trackPath, Class... startsWithExclusive )
+    {
+    return createParameterGraph( ConstructorSpec.of( constructors ), trackPath, ConstructorSpec.toNames( startsWithExclusive ) );
+    }
+
+  /**
+   * Method createParameterGraph returns a graph of every constructor parameter list, from {@link #BEGIN} to {@link #END}.
+   * <p/>
+   * If trackPath is true, each vertex is prefixed with the integer id of the path leading to it, so the graph
+   * is a tree of shared parameter prefixes.
+   */
+  public static DirectedGraph<Prefix<Integer, String, String>, Integer> createParameterGraph( Collection<ConstructorSpec> constructors, boolean trackPath, String... startsWithExclusive )
     {
-    Set<Class> after = new HashSet<Class>( Arrays.asList( startsWithExclusive ) );
+    Set<String> after = new HashSet<String>( Arrays.asList( startsWithExclusive ) );
 
-    DirectedGraph<Prefix<String, String, Class>, Integer> graph = newGraph();
+    DirectedGraph<Prefix<Integer, String, String>, Integer> graph = newGraph();
 
     graph.addVertex( BEGIN );
     graph.addVertex( END );
 
     Set<String> foundConstructors = new HashSet<String>();
+    Map<Prefix<Integer, String, String>, Integer> pathIDs = new HashMap<Prefix<Integer, String, String>, Integer>();
 
-    for( Constructor constructor : constructors )
+    pathIDs.put( BEGIN, BEGIN_ID );
+
+    for( ConstructorSpec constructor : constructors )
       {
-      ConstructorProperties annotation = (ConstructorProperties) constructor.getAnnotation( ConstructorProperties.class );
+      String[] propertyArray = constructor.getProperties();
+      String[] typeArray = constructor.getParameterTypes();
 
-      String ctor = Joiner.on( "," ).join( annotation.value() );
+      String ctor = Joiner.on( "," ).join( propertyArray );
 
       if( foundConstructors.contains( ctor ) )
         continue;
 
       foundConstructors.add( ctor );
 
-      LOG.info( "adding ctor: {}", ctor );
-
-      Prefix<String, String, Class> lastPair = BEGIN;
+      LOG.debug( "adding ctor: {}", ctor );
 
-      String[] propertyArray = annotation.value();
-      Class[] typeArray = constructor.getParameterTypes();
+      Prefix<Integer, String, String> lastPair = BEGIN;
 
       if( propertyArray.length != typeArray.length )
         throw new IllegalStateException( "parameter and type mismatch: params: " +
@@ -85,10 +109,10 @@ public class ParameterGraphs
 
       boolean found = after.isEmpty();
 
-      for( int i = 0; i < annotation.value().length; i++ )
+      for( int i = 0; i < propertyArray.length; i++ )
         {
         String property = propertyArray[ i ];
-        Class parameterType = typeArray[ i ];
+        String parameterType = typeArray[ i ];
 
         if( i == 0 && !found && after.contains( parameterType ) )
           {
@@ -99,10 +123,13 @@ public class ParameterGraphs
         if( !found ) // wasn't found prior
           break;
 
-        String hash = trackPath ? lastPair.getHash() : null;
-        Prefix<String, String, Class> pair = new Prefix<String, String, Class>( hash, property, parameterType );
+        Integer pathID = trackPath ? pathIDs.get( lastPair ) : null;
+        Prefix<Integer, String, String> pair = new Prefix<Integer, String, String>( pathID, property, parameterType );
 
-        pair.addPayload( "constructor", constructor );
+        if( trackPath && !pathIDs.containsKey( pair ) )
+          pathIDs.put( pair, pathIDs.size() );
+
+        pair.addPayload( "varArgs", constructor.isVarArgs() );
 
         graph.addVertex( pair );
 
@@ -117,6 +144,46 @@ public class ParameterGraphs
     return graph;
     }
 
+  /**
+   * Method getDepths returns the depth of every vertex reachable from root, in a single breadth first pass.
+   */
+  public static <V, E> Map<V, Integer> getDepths( DirectedGraph<V, E> graph, V root )
+    {
+    Map<V, Integer> depths = new HashMap<V, Integer>();
+    Deque<V> queue = new ArrayDeque<V>();
+
+    depths.put( root, 0 );
+    queue.add( root );
+
+    while( !queue.isEmpty() )
+      {
+      V vertex = queue.remove();
+      int depth = depths.get( vertex ) + 1;
+
+      for( E edge : graph.outgoingEdgesOf( vertex ) )
+        {
+        V target = graph.getEdgeTarget( edge );
+
+        if( depths.containsKey( target ) )
+          continue;
+
+        depths.put( target, depth );
+        queue.add( target );
+        }
+      }
+
+    return depths;
+    }
+
+  /**
+   * Method countMethods returns the number of builder methods generated for the given graph, one per parameter
+   * and one terminal method per parameter ending a constructor.
+   */
+  public static int countMethods( DirectedGraph<Prefix<Integer, String, String>, Integer> graph )
+    {
+    return graph.vertexSet().size() - 2 + graph.inDegreeOf( END );
+    }
+
   private static <V> SimpleDirectedGraph<V, Integer> newGraph()
     {
     return new SimpleDirectedGraph<V, Integer>( new EdgeFactory<V, Integer>()
@@ -131,28 +198,28 @@ public class ParameterGraphs
     } );
     }
 
-  public static void writeDOT( String name, DirectedGraph<Prefix<String, String, Class>, Integer> graph )
+  /**
+   * Method writeDOT writes the given graph to the given writer in DOT format, the writer is left open so many
+   * graphs may be bundled, see {@link Diagnostics}.
+   */
+  public static void writeDOT( DirectedGraph<Prefix<Integer, String, String>, Integer> graph, Writer writer ) throws IOException
     {
-    try
+    new DOTExporter<Prefix<Integer, String, String>, Integer>(
+      new IntegerNameProvider<Prefix<Integer, String, String>>(),
+      new VertexNameProvider<Prefix<Integer, String, String>>()
       {
-      new File( "build/dot" ).mkdirs();
-
-      new DOTExporter<Prefix<String, String, Class>, Integer>(
-        new IntegerNameProvider<Prefix<String, String, Class>>(),
-        new VertexNameProvider<Prefix<String, String, Class>>()
+      @Override
+      public String getVertexName( Prefix<Integer, String, String> prefix )
         {
-        @Override
-        public String getVertexName( Prefix<String, String, Class> prefix )
-          {
-          return prefix.print();
-          }
-        },
-        new StringEdgeNameProvider<Integer>()
-      ).export( new FileWriter( "build/dot/" + name + "-graph.dot" ), graph );
-      }
-    catch( IOException exception )
-      {
-      exception.printStackTrace();
-      }
+        if( prefix == BEGIN || prefix == END )
+          return prefix == BEGIN ? "BEGIN" : "END";
+
+        return prefix.print();
+        }
+      },
+      new StringEdgeNameProvider<Integer>()
+    ).export( writer, graph );
+
+    writer.write( "\n" );
     }
   }
@@ -20,13 +20,9 @@
 
 package cascading.fluid.generator.util;
 
-import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-
 /**
  *
  */
@@ -72,13 +68,6 @@ public class Prefix<P, Lhs, Rhs>
     return pair.getRhs();
     }
 
-  public String getHash()
-    {
-    HashFunction hf = Hashing.md5();
-
-    return hf.newHasher().putString( toString(), Charset.forName( "UTF-8" ) ).hash().toString();
-    }
-
   public void addPayload( String key, Object value )
     {
     if( payload == null )
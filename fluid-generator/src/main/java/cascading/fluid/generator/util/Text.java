@@ -29,4 +29,9 @@ public class Text
     {
     return typeName.substring( 0, 1 ).toLowerCase() + typeName.substring( 1 );
     }
+
+  public static String toFirstUpper( String typeName )
+    {
+    return typeName.substring( 0, 1 ).toUpperCase() + typeName.substring( 1 );
+    }
   }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Multimap;
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class TypeIndex is an immutable view over a single classpath scan.
+ * <p/>
+ * The scan is performed once on creation, all sub-type and constructor lookups are answered from it, and
+ * results are memoized so generators running concurrently may share a single instance.
+ * <p/>
+ * An index created by {@link #scanLibrary(String...)} only covers the given packages, and resolves sub-types by
+ * assignability so types whose super-types live outside the scanned packages, like Cascading, are still found.
+ */
+public final class TypeIndex implements TypeSource
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( TypeIndex.class );
+
+  private final Reflections reflections;
+  private final boolean library;
+  private volatile List<Class<?>> scannedTypes;
+  private final ConcurrentMap<Class<?>, Set<?>> subTypes = new ConcurrentHashMap<Class<?>, Set<?>>();
+  private final ConcurrentMap<Class<?>, Map<?, ?>> instantiable = new ConcurrentHashMap<Class<?>, Map<?, ?>>();
+  private final ConcurrentMap<Class<?>, Map<?, ?>> allInstantiable = new ConcurrentHashMap<Class<?>, Map<?, ?>>();
+
+  public static TypeIndex scan( String... packages )
+    {
+    long start = System.currentTimeMillis();
+
+    TypeIndex typeIndex = new TypeIndex( new Reflections( (Object[]) packages ), false );
+
+    LOG.info( "scanned packages: {}, in {}ms", packages, System.currentTimeMillis() - start );
+
+    return typeIndex;
+    }
+
+  public static TypeIndex scanLibrary( String... packages )
+    {
+    long start = System.currentTimeMillis();
+
+    ConfigurationBuilder configuration = new ConfigurationBuilder()
+      .forPackages( packages )
+      .filterInputsBy( new FilterBuilder().includePackage( packages ) )
+      .setScanners( new SubTypesScanner( false ) ); // retain direct sub-types of Object, so all types are stored
+
+    TypeIndex typeIndex = new TypeIndex( new Reflections( configuration ), true );
+
+    LOG.info( "scanned library packages: {}, in {}ms", packages, System.currentTimeMillis() - start );
+
+    return typeIndex;
+    }
+
+  private TypeIndex( Reflections reflections, boolean library )
+    {
+    this.reflections = reflections;
+    this.library = library;
+    }
+
+  public boolean isLibrary()
+    {
+    return library;
+    }
+
+  public <T> Set<Class<? extends T>> getSubTypesOf( Class<T> type )
+    {
+    Set<Class<? extends T>> result = (Set<Class<? extends T>>) subTypes.get( type );
+
+    if( result != null )
+      return result;
+
+    result = Collections.unmodifiableSet( library ? findAssignableTypes( type ) : reflections.getSubTypesOf( type ) );
+
+    Set<Class<? extends T>> prior = (Set<Class<? extends T>>) subTypes.putIfAbsent( type, result );
+
+    return prior != null ? prior : result;
+    }
+
+  private List<Class<?>> getScannedTypes()
+    {
+    if( scannedTypes != null )
+      return scannedTypes;
+
+    // every scanned type is stored as the sub-type of its super-class and interfaces, scanned or not
+    Multimap<String, String> store = reflections.getStore().get( SubTypesScanner.class.getSimpleName() );
+    List<Class<?>> types = new ArrayList<Class<?>>();
+
+    for( String name : new LinkedHashSet<String>( store.values() ) )
+      {
+      try
+        {
+        types.add( Reflection.loadClass( name ) );
+        }
+      catch( RuntimeException exception )
+        {
+        LOG.warn( "unable to load scanned type: {}", name, exception );
+        }
+      catch( LinkageError error )
+        {
+        LOG.warn( "unable to link scanned type: {}", name, error );
+        }
+      }
+
+    scannedTypes = Collections.unmodifiableList( types );
+
+    return scannedTypes;
+    }
+
+  private <T> Set<Class<? extends T>> findAssignableTypes( Class<T> type )
+    {
+    Set<Class<? extends T>> result = new LinkedHashSet<Class<? extends T>>();
+
+    for( Class<?> candidate : getScannedTypes() )
+      {
+      if( candidate != type && type.isAssignableFrom( candidate ) )
+        result.add( (Class<? extends T>) candidate );
+      }
+
+    return result;
+    }
+
+  @Override
+  public Map<TypeSpec, Set<ConstructorSpec>> getInstantiableSubTypes( Class<?> type, boolean allConstructors )
+    {
+    Map<TypeSpec, Set<ConstructorSpec>> specs = new LinkedHashMap<TypeSpec, Set<ConstructorSpec>>();
+
+    for( Map.Entry<? extends Class<?>, Set<Constructor>> entry : getAllInstantiableSubTypes( type, allConstructors ).entrySet() )
+      specs.put( TypeSpec.of( entry.getKey() ), ConstructorSpec.of( entry.getValue() ) );
+
+    return specs;
+    }
+
+  public <T> Map<Class<? extends T>, Set<Constructor>> getAllInstantiableSubTypes( Class<T> type, boolean allConstructors )
+    {
+    ConcurrentMap<Class<?>, Map<?, ?>> cache = allConstructors ? allInstantiable : instantiable;
+    Map<Class<? extends T>, Set<Constructor>> result = (Map<Class<? extends T>, Set<Constructor>>) cache.get( type );
+
+    if( result != null )
+      return result;
+
+    Map<Class<? extends T>, Set<Constructor>> found = Types.findAllInstantiableSubTypes( getSubTypesOf( type ), type, allConstructors );
+
+    // retain the sorted order of the found types
+    Map<Class<? extends T>, Set<Constructor>> copy = new LinkedHashMap<Class<? extends T>, Set<Constructor>>();
+
+    for( Map.Entry<Class<? extends T>, Set<Constructor>> entry : found.entrySet() )
+      copy.put( entry.getKey(), Collections.unmodifiableSet( entry.getValue() ) );
+
+    result = Collections.unmodifiableMap( copy );
+
+    Map<Class<? extends T>, Set<Constructor>> prior = (Map<Class<? extends T>, Set<Constructor>>) cache.putIfAbsent( type, result );
+
+    return prior != null ? prior : result;
+    }
+  }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interface TypeSource provides the instantiable sub-types a generator creates builders for.
+ * <p/>
+ * Sub-types are found by reflection in a {@link TypeIndex}, or in the javac model when generating from within
+ * an annotation processor.
+ */
+public interface TypeSource
+  {
+  /**
+   * Method getInstantiableSubTypes returns every public concrete sub-type of the given type, ordered by name, with
+   * its {@link java.beans.ConstructorProperties} annotated constructors.
+   *
+   * @param type            the super-type
+   * @param allConstructors if false, constructors with a Pipe parameter are omitted
+   * @return the sub-types and their constructors, never null
+   */
+  Map<TypeSpec, Set<ConstructorSpec>> getInstantiableSubTypes( Class<?> type, boolean allConstructors );
+  }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2007-2014 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cascading.fluid.generator.util;
+
+/**
+ * Class TypeSpec describes a type a builder is generated for, by name.
+ * <p/>
+ * The returnType is the type returned by factory builders. It is the type itself when reflected on, or the nearest
+ * loadable super-type when the type is only known to the javac model.
+ */
+public class TypeSpec
+  {
+  private final String name;
+  private final String simpleName;
+  private final Class returnType;
+
+  public static TypeSpec of( Class type )
+    {
+    return new TypeSpec( type.getCanonicalName(), type.getSimpleName(), type );
+    }
+
+  public TypeSpec( String name, String simpleName, Class returnType )
+    {
+    this.name = name;
+    this.simpleName = simpleName;
+    this.returnType = returnType;
+    }
+
+  public String getName()
+    {
+    return name;
+    }
+
+  public String getSimpleName()
+    {
+    return simpleName;
+    }
+
+  public Class getReturnType()
+    {
+    return returnType;
+    }
+
+  @Override
+  public String toString()
+    {
+    return name;
+    }
+  }
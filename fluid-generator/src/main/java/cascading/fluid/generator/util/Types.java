@@ -34,7 +34,6 @@ import javax.annotation.Nullable;
 import cascading.pipe.Pipe;
 import com.google.common.base.Predicate;
 import org.reflections.ReflectionUtils;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +50,12 @@ public class Types
   public static final Predicate<Member> PUBLIC = ReflectionUtils.withModifier( Modifier.PUBLIC );
   public static final Predicate<Constructor> CONSTRUCTOR_PROPERTIES = ReflectionUtils.withAnnotation( ConstructorProperties.class );
 
-  public static <T> Map<Class<? extends T>, Set<Constructor>> getAllInstantiableSubTypes( Reflections reflections, Class<T> type, boolean allConstructors )
+  public static <T> Map<Class<? extends T>, Set<Constructor>> getAllInstantiableSubTypes( TypeIndex typeIndex, Class<T> type, boolean allConstructors )
+    {
+    return typeIndex.getAllInstantiableSubTypes( type, allConstructors );
+    }
+
+  static <T> Map<Class<? extends T>, Set<Constructor>> findAllInstantiableSubTypes( Set<Class<? extends T>> subTypes, Class<T> type, boolean allConstructors )
     {
     Map<Class<? extends T>, Set<Constructor>> types = new TreeMap<Class<? extends T>, Set<Constructor>>( new Comparator<Class<? extends T>>()
     {
@@ -62,8 +66,6 @@ public class Types
       }
     } );
 
-    Set<Class<? extends T>> subTypes = reflections.getSubTypesOf( type );
-
     LOG.info( "for type: {}, found {} sub-types", type.getName(), subTypes.size() );
 
     for( Class<? extends T> subType : subTypes )
@@ -138,6 +140,25 @@ public class Types
     } );
     }
 
+  public static <T> Set<Constructor> getConstructorsSharedWith( Class<? extends T> type, final Class<?> other )
+    {
+    return getInstantiableConstructors( type, new Predicate<Constructor>()
+    {
+    @Override
+    public boolean apply( @Nullable Constructor constructor )
+      {
+      try
+        {
+        return Modifier.isPublic( other.getConstructor( constructor.getParameterTypes() ).getModifiers() );
+        }
+      catch( NoSuchMethodException exception )
+        {
+        return false;
+        }
+      }
+    } );
+    }
+
   public static <T> Set<Constructor> getInstantiableConstructors( Class<? extends T> type, Predicate<Constructor>... predicates )
     {
     if( !Modifier.isPublic( type.getModifiers() ) )